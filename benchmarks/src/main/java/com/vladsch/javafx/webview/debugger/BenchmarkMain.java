@@ -0,0 +1,70 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Benchmarks jar entry point, runs JMH with JSON results in jmh-result-[debugger version].json
+ * unless result options are given, so runs against different debugger library releases can be
+ * compared
+ */
+public class BenchmarkMain {
+    static final String DEBUGGER_POM_PROPERTIES = "/META-INF/maven/com.vladsch.javafx-webview-debugger/javafx-webview-debugger/pom.properties";
+
+    public static void main(String[] args) throws Exception {
+        ArrayList<String> options = new ArrayList<>(Arrays.asList(args));
+
+        if (!options.contains("-rf")) {
+            options.add("-rf");
+            options.add("json");
+        }
+
+        if (!options.contains("-rff")) {
+            options.add("-rff");
+            options.add("jmh-result-" + getDebuggerVersion() + ".json");
+        }
+
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+
+    static String getDebuggerVersion() {
+        try (InputStream inputStream = DevToolsDebuggerJsBridge.class.getResourceAsStream(DEBUGGER_POM_PROPERTIES)) {
+            if (inputStream != null) {
+                Properties properties = new Properties();
+                properties.load(inputStream);
+                return properties.getProperty("version", "unknown");
+            }
+        } catch (IOException ignored) {
+
+        }
+        return "unknown";
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resource copying used for extracting resources and reading the start page
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyBenchmark {
+    @Param({ "65536", "4194304" })
+    public int size;
+
+    String myText;
+    byte[] myBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        myText = InstrumentHtmlBenchmark.repeatBody(InstrumentHtmlBenchmark.readResource("/README.html"), size).substring(0, size);
+        myBytes = myText.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void copy(Blackhole blackhole) throws IOException {
+        StringWriter writer = new StringWriter(size);
+        WebViewDebugSample.copy(new StringReader(myText), writer);
+        blackhole.consume(writer.getBuffer().length());
+    }
+
+    @Benchmark
+    public void copyWithModifier(Blackhole blackhole) throws IOException {
+        StringWriter writer = new StringWriter(size + 64);
+        WebViewDebugSample.copy(new StringReader(myText), writer, text -> text.replace("</head>", "<script src=\"markdown-navigator.js\"></script>\n</head>"));
+        blackhole.consume(writer.getBuffer().length());
+    }
+
+    @Benchmark
+    public void copyStream(Blackhole blackhole) throws IOException {
+        StringWriter writer = new StringWriter(size);
+        WebViewDebugSample.copy(new ByteArrayInputStream(myBytes), writer);
+        blackhole.consume(writer.getBuffer().length());
+    }
+
+    @Benchmark
+    public void copyBinary(Blackhole blackhole) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(myBytes.length);
+        WebViewDebugSample.copyBinary(new ByteArrayInputStream(myBytes), outputStream);
+        blackhole.consume(outputStream.size());
+    }
+}
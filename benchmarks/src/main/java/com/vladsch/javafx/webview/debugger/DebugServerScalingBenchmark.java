@@ -0,0 +1,173 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import netscape.javascript.JSObject;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of N instances sharing one debug server: connecting a Dev Tools client to each instance and
+ * routing a message to it, and heap retained per connected instance
+ * <p>
+ * Instances are stand-in connectors registered with the library's JfxWebSocketServer the same way
+ * DevToolsDebuggerServer registers each DevToolsDebuggerJsBridge, so no WebView is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DebugServerScalingBenchmark {
+    @Param({ "1", "4", "16", "64" })
+    public int instances;
+
+    JfxWebSocketServer myServer;
+    int myPort;
+    CountDownLatch myRouted;
+    final List<WebSocketClient> myClients = new ArrayList<>();
+
+    /**
+     * Heap retained per connected instance, measured after a GC, time of retainedHeap is not meaningful
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long heapBytesPerInstance;
+    }
+
+    static class StubConnector implements JfxDebuggerConnector {
+        final DebugServerScalingBenchmark myBenchmark;
+
+        StubConnector(DebugServerScalingBenchmark benchmark) {
+            myBenchmark = benchmark;
+        }
+
+        @Override public void sendMessageToBrowser(String message) { myBenchmark.myRouted.countDown(); }
+        @Override public void onOpen() { }
+        @Override public void onClosed(int code, String reason, boolean remote) { }
+        @Override public void log(String type, long timestamp, JSObject args) { }
+        @Override public void debugBreak() { }
+        @Override public void pageReloading() { }
+        @Override public void reloadPage() { }
+        @Override public void setDebugOnLoad(DebugOnLoad debugOnLoad) { }
+        @Override public DebugOnLoad getDebugOnLoad() { return DebugOnLoad.NONE; }
+        @Override public boolean isDebuggerPaused() { return false; }
+        @Override public void releaseDebugger(boolean shuttingDown, Runnable runnable) { if (runnable != null) runnable.run(); }
+        @Override public void removeAllBreakpoints(Runnable runnable) { if (runnable != null) runnable.run(); }
+        @Override public void pageLoadComplete() { }
+    }
+
+    static class DevToolsClient extends WebSocketClient {
+        DevToolsClient(URI serverUri) {
+            super(serverUri);
+        }
+
+        @Override public void onOpen(ServerHandshake handshake) { }
+        @Override public void onMessage(String message) { }
+        @Override public void onClose(int code, String reason, boolean remote) { }
+        @Override public void onError(Exception ex) { }
+    }
+
+    @Setup(Level.Iteration)
+    public void startServer() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            myPort = socket.getLocalPort();
+        }
+
+        CountDownLatch started = new CountDownLatch(1);
+        Throwable[] failure = new Throwable[1];
+        myServer = new JfxWebSocketServer(new InetSocketAddress("localhost", myPort), throwable -> {
+            failure[0] = throwable;
+            started.countDown();
+        }, server -> started.countDown());
+        myServer.start();
+
+        if (!started.await(10, TimeUnit.SECONDS) || failure[0] != null) {
+            throw new IllegalStateException("Debug server did not start", failure[0]);
+        }
+
+        for (int i = 0; i < instances; i++) {
+            myServer.addServer(new StubConnector(this), i);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopServer() throws Exception {
+        for (WebSocketClient client : myClients) {
+            client.closeBlocking();
+        }
+        myClients.clear();
+        myServer.stop(1000);
+    }
+
+    void connectAll() throws Exception {
+        myRouted = new CountDownLatch(instances);
+
+        for (int i = 0; i < instances; i++) {
+            // same resource id the library puts in the instance's debugger URL
+            DevToolsClient client = new DevToolsClient(new URI("ws://localhost:" + myPort + (i == 0 ? "/" : "/?" + i)));
+            if (!client.connectBlocking()) throw new IOException("Connection to instance " + i + " failed");
+            myClients.add(client);
+            client.send("{\"id\":1,\"method\":\"Runtime.enable\"}");
+        }
+
+        if (!myRouted.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Messages not routed: " + myRouted.getCount() + " of " + instances);
+        }
+    }
+
+    @Benchmark
+    public void connectAndRoute() throws Exception {
+        connectAll();
+    }
+
+    @Benchmark
+    public void retainedHeap(Footprint footprint) throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+
+        connectAll();
+
+        memory.gc();
+        long after = memory.getHeapMemoryUsage().getUsed();
+        footprint.heapBytesPerInstance = Math.max(0, after - before) / instances;
+    }
+}
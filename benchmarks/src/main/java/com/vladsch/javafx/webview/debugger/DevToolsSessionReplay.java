@@ -0,0 +1,253 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.sun.javafx.application.PlatformImpl;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Replays a recorded Dev Tools session against a new Browser on a headless JavaFX platform, the
+ * replay client takes the place of Chrome Dev Tools
+ * <p>
+ * Requests are sent with their recorded timing divided by the speed, or back to back for max.
+ * Reports throughput, response latency percentiles and how responses compare to the recorded
+ * ones: same, same shape with different values, or different. Ids of objects and scripts differ
+ * between sessions, so requests using them may get different responses.
+ * <p>
+ * Run: java -cp target/benchmarks.jar com.vladsch.javafx.webview.debugger.DevToolsSessionReplay session.gz [1|10|max]
+ * <p>
+ * Exit code is 1 if responses are missing.
+ */
+public class DevToolsSessionReplay {
+    static final int INSTANCE = 1;
+    static final Pattern STRING_VALUE = Pattern.compile(":\"(?:[^\"\\\\]|\\\\.)*\"");
+    static final Pattern NUMBER_VALUE = Pattern.compile(":-?\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?");
+
+    final List<DevToolsSessionRecorder.Entry> myEntries;
+    final double mySpeed;
+    final HashMap<Long, String> myRecordedResponses = new HashMap<>();
+    final ConcurrentHashMap<Long, Long> mySent = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Long, String> mySentMethods = new ConcurrentHashMap<>();
+    final LatencyHistogram myLatency = new LatencyHistogram();
+    final AtomicInteger myResponses = new AtomicInteger();
+    final AtomicInteger mySame = new AtomicInteger();
+    final AtomicInteger mySameShape = new AtomicInteger();
+    final AtomicInteger myDifferent = new AtomicInteger();
+    final AtomicInteger myEvents = new AtomicInteger();
+    final ConcurrentHashMap<String, AtomicInteger> myDifferentMethods = new ConcurrentHashMap<>();
+    int myRequests;
+    int myRecordedEvents;
+
+    DevToolsSessionReplay(List<DevToolsSessionRecorder.Entry> entries, double speed) {
+        myEntries = entries;
+        mySpeed = speed;
+
+        for (DevToolsSessionRecorder.Entry entry : entries) {
+            if (entry.direction == DevToolsSessionRecorder.TO_BROWSER) {
+                myRequests++;
+            } else if (entry.message.startsWith("{\"method\":")) {
+                myRecordedEvents++;
+            } else {
+                long id = DevToolsProtocolStats.scanResponseId(entry.message);
+                if (id >= 0) myRecordedResponses.put(id, entry.message);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("usage: DevToolsSessionReplay session.gz [1|10|max]");
+            System.exit(2);
+        }
+
+        PageLoadLatencySuite.setDefaultProperty("glass.platform", "Monocle");
+        PageLoadLatencySuite.setDefaultProperty("monocle.platform", "Headless");
+        PageLoadLatencySuite.setDefaultProperty("prism.order", "sw");
+
+        String speed = args.length > 1 ? args[1] : "1";
+        DevToolsSessionReplay replay = new DevToolsSessionReplay(DevToolsSessionRecorder.read(new File(args[0])), speed.equals("max") ? 0 : Double.parseDouble(speed));
+        int missing = replay.run();
+        System.exit(missing == 0 ? 0 : 1);
+    }
+
+    static String shape(String message) {
+        return NUMBER_VALUE.matcher(STRING_VALUE.matcher(message).replaceAll(":\"\"")).replaceAll(":0");
+    }
+
+    void received(String message) {
+        long now = System.nanoTime();
+        if (message.startsWith("{\"method\":")) {
+            myEvents.incrementAndGet();
+            return;
+        }
+
+        long id = DevToolsProtocolStats.scanResponseId(message);
+        Long sent = id < 0 ? null : mySent.remove(id);
+        if (sent == null) return;
+
+        myLatency.record(now - sent);
+        myResponses.incrementAndGet();
+
+        String recorded = myRecordedResponses.get(id);
+        if (message.equals(recorded)) {
+            mySame.incrementAndGet();
+        } else if (recorded != null && shape(message).equals(shape(recorded))) {
+            mySameShape.incrementAndGet();
+        } else {
+            myDifferent.incrementAndGet();
+            myDifferentMethods.computeIfAbsent(mySentMethods.getOrDefault(id, "unknown"), key -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    int run() throws Exception {
+        ClasspathResourceServer.register();
+
+        CountDownLatch started = new CountDownLatch(1);
+        PlatformImpl.startup(started::countDown);
+        started.await();
+        Platform.setImplicitExit(false);
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch debugServer = new CountDownLatch(1);
+        Throwable[] debugServerFailure = new Throwable[1];
+
+        Browser browser = JsBridgeRoundTripBenchmark.onFx(() -> {
+            Browser newBrowser = new Browser(new JsBridgeRoundTripBenchmark.StateProvider(), INSTANCE, null);
+            newBrowser.myOnPageLoadTiming = timing -> loaded.countDown();
+
+            Stage stage = new Stage();
+            stage.setScene(new Scene(newBrowser.getRootPane(), 750, 800));
+            stage.show();
+            return newBrowser;
+        });
+
+        if (!loaded.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("start page did not load");
+        }
+
+        Platform.runLater(() -> browser.myJSBridge.startDebugServer(port, ex -> {
+            debugServerFailure[0] = ex;
+            debugServer.countDown();
+        }, debugServer::countDown));
+
+        debugServer.await(30, TimeUnit.SECONDS);
+        if (debugServerFailure[0] != null) {
+            throw new IllegalStateException("debug server did not start", debugServerFailure[0]);
+        }
+
+        WebSocketClient client = new WebSocketClient(new URI("ws://localhost:" + port + String.format(JfxWebSocketServer.WEB_SOCKET_RESOURCE, INSTANCE))) {
+            @Override
+            public void onOpen(ServerHandshake handshakedata) {
+            }
+
+            @Override
+            public void onMessage(String message) {
+                received(message);
+            }
+
+            @Override
+            public void onClose(int code, String reason, boolean remote) {
+            }
+
+            @Override
+            public void onError(Exception ex) {
+                ex.printStackTrace();
+            }
+        };
+
+        if (!client.connectBlocking()) {
+            throw new IllegalStateException("cannot connect to debug server on port " + port);
+        }
+
+        long start = System.nanoTime();
+        for (DevToolsSessionRecorder.Entry entry : myEntries) {
+            if (entry.direction != DevToolsSessionRecorder.TO_BROWSER) continue;
+
+            if (mySpeed > 0) {
+                long due = start + (long) (entry.micros * 1000 / mySpeed);
+                long wait = due - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            }
+
+            long id = DevToolsProtocolStats.scanId(entry.message);
+            if (id >= 0) {
+                String method = DevToolsProtocolStats.scanString(entry.message, "\"method\":\"");
+                mySentMethods.put(id, method == null ? "unknown" : method);
+                mySent.put(id, System.nanoTime());
+            }
+            client.send(entry.message);
+        }
+
+        // wait for outstanding responses
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!mySent.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        client.closeBlocking();
+        report(elapsedNanos);
+        return mySent.size();
+    }
+
+    void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        int received = myResponses.get() + myEvents.get();
+
+        System.out.println(String.format("Replayed %d requests at %s in %.2f s", myRequests, mySpeed > 0 ? mySpeed + "x" : "max speed", seconds));
+        System.out.println(String.format("Throughput: %.1f requests/s, %.1f messages/s received", myRequests / seconds, received / seconds));
+        System.out.println("Response latency: " + myLatency.snapshot());
+        System.out.println(String.format("Responses: %d same, %d same shape, %d different, %d missing", mySame.get(), mySameShape.get(), myDifferent.get(), mySent.size()));
+        System.out.println(String.format("Events: %d, recorded %d", myEvents.get(), myRecordedEvents));
+
+        ArrayList<String> methods = new ArrayList<>(myDifferentMethods.keySet());
+        methods.sort(String::compareTo);
+        for (String method : methods) {
+            System.out.println("  different: " + method + " " + myDifferentMethods.get(method).get());
+        }
+    }
+}
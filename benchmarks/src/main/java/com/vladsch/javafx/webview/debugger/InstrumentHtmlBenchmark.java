@@ -0,0 +1,106 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start page instrumentation as done by Browser.instrumentHtml() and Browser.loadStartPage():
+ * helper script inserted in head, declared state keys read from head and state script inserted
+ * at body start
+ * <p>
+ * small is README.html as shipped, large is its body repeated to about 4MB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentHtmlBenchmark {
+    static final int LARGE_SIZE = 4 * 1024 * 1024;
+    static final String HEAD_INSERT = "\n<script src=\"markdown-navigator.js\"></script>";
+    static final String STATE_SCRIPT = "\n<script>\nmarkdownNavigator.injectState(\"onLoadScroll\", {\"x\":0,\"y\":1250});\n" +
+            "markdownNavigator.injectState(\"githubCollapsedHeadingsState\", {\"readme-md\":[\"installation\",\"usage\"]});\n</script>";
+
+    @Param({ "small", "large" })
+    public String page;
+
+    String myHtml;
+
+    @Setup
+    public void setup() throws IOException {
+        String readme = readResource("/README.html");
+        myHtml = page.equals("large") ? repeatBody(readme, LARGE_SIZE) : readme;
+    }
+
+    static String readResource(String path) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (Reader reader = new InputStreamReader(WebViewDebugSample.class.getResourceAsStream(path), StandardCharsets.UTF_8)) {
+            WebViewDebugSample.copy(reader, writer);
+        }
+        return writer.toString();
+    }
+
+    static String repeatBody(String html, int size) {
+        int bodyStart = html.indexOf('>', html.indexOf("<body")) + 1;
+        int bodyEnd = html.lastIndexOf("</body>");
+        String body = html.substring(bodyStart, bodyEnd);
+
+        StringBuilder sb = new StringBuilder(size + html.length());
+        sb.append(html, 0, bodyStart);
+        while (sb.length() < size) {
+            sb.append(body);
+        }
+        sb.append(html, bodyEnd, html.length());
+        return sb.toString();
+    }
+
+    @Benchmark
+    public void instrument(Blackhole blackhole) throws IOException {
+        HtmlInstrumenter instrumenter = new HtmlInstrumenter(HEAD_INSERT, stateKeys -> STATE_SCRIPT);
+        StringWriter writer = new StringWriter(myHtml.length() + 1024);
+        instrumenter.instrument(new StringReader(myHtml), writer);
+        blackhole.consume(writer.getBuffer().length());
+    }
+
+    @Benchmark
+    public void copyOnly(Blackhole blackhole) throws IOException {
+        // baseline: same data through WebViewDebugSample.copy without instrumenting
+        StringWriter writer = new StringWriter(myHtml.length() + 1024);
+        WebViewDebugSample.copy(new StringReader(myHtml), writer);
+        blackhole.consume(writer.getBuffer().length());
+    }
+}
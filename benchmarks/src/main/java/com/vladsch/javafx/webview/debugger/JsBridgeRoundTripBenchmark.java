@@ -0,0 +1,170 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.sun.javafx.application.PlatformImpl;
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJson;
+import javafx.application.Platform;
+import javafx.concurrent.Worker;
+import javafx.scene.web.WebEngine;
+import javafx.scene.web.WebView;
+import netscape.javascript.JSObject;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JavaScript bridge round trips in a WebView on a headless JavaFX platform (Monocle)
+ * <p>
+ * The page has markdown-navigator.js and a connected DevToolsDebuggerJsBridge, the same as the
+ * sample's start page without the debug server. Each invocation hops to the FX thread, fxHop is
+ * that cost alone. Loops of 100 calls run in one script so the hop is amortized.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Dglass.platform=Monocle", "-Dmonocle.platform=Headless", "-Dprism.order=sw" })
+public class JsBridgeRoundTripBenchmark {
+    static final int CALLS = 100;
+
+    WebView myWebView;
+    WebEngine myEngine;
+    DevToolsDebuggerJsBridge myJSBridge;
+    final StateProvider myStateProvider = new StateProvider();
+    final Target myTarget = new Target();
+
+    static class StateProvider implements JfxScriptStateProvider {
+        BoxedJsObject myState = BoxedJson.of();
+
+        @Override
+        public @NotNull BoxedJsObject getState() {
+            return myState;
+        }
+
+        @Override
+        public void setState(@NotNull BoxedJsObject state) {
+            myState = state;
+        }
+    }
+
+    /**
+     * Upcall target, must be public for JavaScript to call it
+     */
+    public static class Target {
+        public int myCalls;
+
+        public int call(int value) {
+            myCalls++;
+            return value + 1;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        PlatformImpl.startup(started::countDown);
+        started.await();
+
+        String html = "<!DOCTYPE html>\n<html><head>\n<script>\n" + InstrumentHtmlBenchmark.readResource("/markdown-navigator.js") + "\n</script>\n" +
+                "</head><body><p id='text'>JsBridgeRoundTripBenchmark</p></body></html>";
+
+        CountDownLatch loaded = new CountDownLatch(1);
+        onFx(() -> {
+            myWebView = new WebView();
+            myEngine = myWebView.getEngine();
+            myJSBridge = new DevToolsDebuggerJsBridge(myWebView, myEngine, 0, myStateProvider);
+
+            myEngine.getLoadWorker().stateProperty().addListener((ov, oldState, newState) -> {
+                if (newState == Worker.State.SUCCEEDED) {
+                    JSObject window = (JSObject) myEngine.executeScript("window");
+                    window.setMember(ScriptStateBridge.MEMBER_NAME, new ScriptStateBridge(myStateProvider));
+                    window.setMember("benchmarkTarget", myTarget);
+                    myJSBridge.connectJsBridge();
+                    loaded.countDown();
+                }
+            });
+            myEngine.loadContent(html);
+            return null;
+        });
+
+        if (!loaded.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("benchmark page did not load");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        PlatformImpl.exit();
+    }
+
+    static <T> T onFx(Callable<T> callable) throws Exception {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                future.complete(callable.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future.get(30, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void fxHop(Blackhole blackhole) throws Exception {
+        blackhole.consume(onFx(() -> Boolean.TRUE));
+    }
+
+    @Benchmark
+    public void executeScript(Blackhole blackhole) throws Exception {
+        blackhole.consume(onFx(() -> myEngine.executeScript("document.getElementById('text').textContent.length")));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void javaUpcall(Blackhole blackhole) throws Exception {
+        blackhole.consume(onFx(() -> myEngine.executeScript("(function() { let v = 0; for (let i = 0; i < " + CALLS + "; i++) v = benchmarkTarget.call(v); return v; })()")));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void setState(Blackhole blackhole) throws Exception {
+        blackhole.consume(onFx(() -> myEngine.executeScript("(function() { for (let i = 0; i < " + CALLS + "; i++) markdownNavigator.setState('onLoadScroll', { x: 0, y: i }); })()")));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void setStateDeferred(Blackhole blackhole) throws Exception {
+        blackhole.consume(onFx(() -> myEngine.executeScript("(function() { for (let i = 0; i < " + CALLS + "; i++) markdownNavigator.setStateDeferred('onLoadScroll', { x: 0, y: i }); markdownNavigator.flushState(); })()")));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message pane filter and search at large history sizes, compared to a linear scan of the history
+ * <p>
+ * The index covers all messageCount messages and both read messages from memory, so only the
+ * lookup is compared, not spill file reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageIndexBenchmark {
+    static final String[] WORDS = new String[] {
+            "onClick", "clicked", "on", "DIV", "#readme", "Chrome", "Dev", "Tools", "connected", "disconnected",
+            "Debug", "server", "started", "debug", "URL", "ws://localhost:51723", "onLoadScroll", "collapsed",
+            "heading", "state", "saved", "page", "load", "complete", "jsBridge", "exception", "timeout", "retry",
+    };
+
+    @Param({ "10000", "100000" })
+    public int messageCount;
+
+    ConsoleMessage[] myMessages;
+    MessageIndex myIndex;
+    int myLastSequence;
+
+    @Setup
+    public void setup() {
+        myMessages = new ConsoleMessage[messageCount];
+        myIndex = new MessageIndex(8192, (messageCount + 8191) / 8192);
+
+        Random random = new Random(42);
+        for (int i = 1; i <= messageCount; i++) {
+            ConsoleMessage message = new ConsoleMessage(i, randomType(random), randomText(random, i));
+            myMessages[i - 1] = message;
+            myIndex.add(message);
+        }
+        myLastSequence = messageCount;
+    }
+
+    ConsoleMessage getMessage(int ordinal) {
+        return myMessages[ordinal];
+    }
+
+    static String randomType(Random random) {
+        int type = random.nextInt(100);
+        return type < 1 ? "error" : type < 5 ? "warn" : type < 30 ? "debug" : "log";
+    }
+
+    static String randomText(Random random, int sequence) {
+        StringBuilder sb = new StringBuilder();
+        int words = 3 + random.nextInt(8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        sb.append(" id-").append(Integer.toHexString(sequence * 31));
+        return sb.toString();
+    }
+
+    @Benchmark
+    public void errorsOnly(Blackhole blackhole) {
+        blackhole.consume(myIndex.query("error", 0, Integer.MAX_VALUE, null, 5000, this::getMessage));
+    }
+
+    @Benchmark
+    public void singleTokenSubstring(Blackhole blackhole) {
+        blackhole.consume(myIndex.query(null, 0, Integer.MAX_VALUE, "xcept", 5000, this::getMessage));
+    }
+
+    @Benchmark
+    public void rareTokenInErrors(Blackhole blackhole) {
+        blackhole.consume(myIndex.query("error", 0, Integer.MAX_VALUE, "timeout", 5000, this::getMessage));
+    }
+
+    @Benchmark
+    public void multiTokenPhrase(Blackhole blackhole) {
+        blackhole.consume(myIndex.query("warn", 0, Integer.MAX_VALUE, "page load", 200, this::getMessage));
+    }
+
+    @Benchmark
+    public void sequenceRange(Blackhole blackhole) {
+        blackhole.consume(myIndex.query(null, myLastSequence / 2, myLastSequence / 2 + 1000, null, 5000, this::getMessage));
+    }
+
+    @Benchmark
+    public void linearScanErrors(Blackhole blackhole) {
+        // what a filter without index costs: look at every message
+        int found = 0;
+        for (ConsoleMessage message : myMessages) {
+            if (message.type.equals("error")) found++;
+        }
+        blackhole.consume(found);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void indexAdd(Blackhole blackhole) {
+        MessageIndex index = new MessageIndex();
+        Random random = new Random(7);
+        for (int i = 1; i <= 1000; i++) {
+            index.add(new ConsoleMessage(i, randomType(random), randomText(random, i)));
+        }
+        blackhole.consume(index);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of Browser.addMessage() per message: posting with logging, and rendering a batch the way
+ * the message console does on the FX thread, without the final executeScript into the message view.
+ * Adding to the message index is measured by MessageIndexBenchmark.indexAdd.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageRenderBenchmark {
+    static final int BATCH_SIZE = 100;
+
+    AsyncLogHandler myLogHandler;
+    final ArrayList<ConsoleMessage> myBatch = new ArrayList<>();
+    int mySequence;
+
+    @Setup
+    public void setup() {
+        // queue and format log events as the sample does, but do not write them anywhere
+        Logger logger = Logger.getLogger("MessageRenderBenchmark");
+        logger.setAdditivity(false);
+        logger.setLevel(Level.INFO);
+        myLogHandler = new AsyncLogHandler(logger, 8192, 100);
+        LogHandler.LOG_HANDLER = myLogHandler;
+
+        Random random = new Random(42);
+        for (int i = 1; i <= BATCH_SIZE; i++) {
+            myBatch.add(new ConsoleMessage(i, MessageIndexBenchmark.randomType(random), MessageIndexBenchmark.randomText(random, i)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        myLogHandler.close(1000);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void post(Blackhole blackhole) {
+        for (ConsoleMessage message : myBatch) {
+            ConsoleMessage consoleMessage = new ConsoleMessage(++mySequence, message.type, message.text);
+            AsyncLogHandler.logInfo(consoleMessage);
+            blackhole.consume(consoleMessage);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void renderBatch(Blackhole blackhole) {
+        blackhole.consume(MessageConsole.jsString(MessageConsole.render(myBatch)));
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.sun.javafx.application.PlatformImpl;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end page load latency on a headless JavaFX platform, from Browser.load() to the page
+ * script calling pageLoadComplete(), see PageLoadTiming for phases
+ * <p>
+ * Each of the cold browsers loads README.html and generated 1MB and 4MB pages once, the first
+ * browser then reloads them for warm timings. Pages are served from memory, nothing is written to
+ * disk and no network is used. Percentiles of each phase are compared to budgets, exit code is 1
+ * if any budget is exceeded.
+ * <p>
+ * Run: java -cp target/benchmarks.jar com.vladsch.javafx.webview.debugger.PageLoadLatencySuite
+ * <p>
+ * Options: -Dpage-load.cold=5 browsers for cold loads, -Dpage-load.warm=20 warm loads of each page,
+ * -Dpage-load.timeout=60000 ms to wait for a page, -Dpage-load.budgets=file budgets to use instead
+ * of page-load-budgets.properties
+ */
+public class PageLoadLatencySuite {
+    static final String README = "README";
+    static final String[] LARGE_PAGES = new String[] { "large-1mb", "large-4mb" };
+    static final int[] LARGE_SIZES = new int[] { 1024 * 1024, 4 * 1024 * 1024 };
+    static final String COLD = "cold";
+    static final String WARM = "warm";
+    static final String[] PERCENTILES = new String[] { "p50", "p90", "p99", "max" };
+
+    final int myColdRuns;
+    final int myWarmRuns;
+    final long myTimeoutMillis;
+    final Properties myBudgets;
+    final LinkedBlockingQueue<PageLoadTiming> myCompleted = new LinkedBlockingQueue<>();
+    final LinkedHashMap<String, ArrayList<PageLoadTiming>> myTimings = new LinkedHashMap<>();
+    final JsBridgeRoundTripBenchmark.StateProvider myStateProvider = new JsBridgeRoundTripBenchmark.StateProvider();
+    String myReadme;
+
+    PageLoadLatencySuite(int coldRuns, int warmRuns, long timeoutMillis, Properties budgets) {
+        myColdRuns = Math.max(1, coldRuns);
+        myWarmRuns = Math.max(0, warmRuns);
+        myTimeoutMillis = timeoutMillis;
+        myBudgets = budgets;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // headless unless another platform is given
+        setDefaultProperty("glass.platform", "Monocle");
+        setDefaultProperty("monocle.platform", "Headless");
+        setDefaultProperty("prism.order", "sw");
+
+        PageLoadLatencySuite suite = new PageLoadLatencySuite(
+                Integer.getInteger("page-load.cold", 5),
+                Integer.getInteger("page-load.warm", 20),
+                Long.getLong("page-load.timeout", 60000),
+                loadBudgets(System.getProperty("page-load.budgets")));
+
+        int failures;
+        try {
+            suite.run();
+            suite.report();
+            failures = suite.checkBudgets();
+        } catch (IllegalStateException e) {
+            System.out.println("FAIL " + e.getMessage());
+            failures = 1;
+        }
+
+        System.out.println(failures == 0 ? "All page load budgets met" : failures + " page load budgets exceeded");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    static void setDefaultProperty(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    static Properties loadBudgets(String file) throws IOException {
+        Properties budgets = new Properties();
+        try (InputStream inputStream = file != null ? new FileInputStream(file) : PageLoadLatencySuite.class.getResourceAsStream("/page-load-budgets.properties")) {
+            if (inputStream != null) budgets.load(inputStream);
+        }
+        return budgets;
+    }
+
+    void run() throws Exception {
+        ClasspathResourceServer.register();
+
+        CountDownLatch started = new CountDownLatch(1);
+        PlatformImpl.startup(started::countDown);
+        started.await();
+        Platform.setImplicitExit(false);
+
+        myReadme = InstrumentHtmlBenchmark.readResource("/README.html");
+
+        for (int run = 0; run < myColdRuns; run++) {
+            int instance = run + 1;
+            Stage[] stage = new Stage[1];
+
+            // constructor loads the start page
+            Browser browser = JsBridgeRoundTripBenchmark.onFx(() -> {
+                Browser newBrowser = new Browser(myStateProvider, instance, null);
+                newBrowser.myOnPageLoadTiming = myCompleted::offer;
+
+                for (int i = 0; i < LARGE_PAGES.length; i++) {
+                    String html = newBrowser.instrumentHtml(InstrumentHtmlBenchmark.repeatBody(myReadme, LARGE_SIZES[i]));
+                    ClasspathResourceServer.getInstance().setPage(instance, "/" + LARGE_PAGES[i] + ".html", html.getBytes(StandardCharsets.UTF_8));
+                }
+
+                stage[0] = new Stage();
+                stage[0].setScene(new Scene(newBrowser.getRootPane(), 750, 800));
+                stage[0].show();
+                return newBrowser;
+            });
+
+            await(README, COLD);
+            for (String page : LARGE_PAGES) {
+                load(browser, instance, page, COLD);
+            }
+
+            if (run == 0) {
+                for (int i = 0; i < myWarmRuns; i++) {
+                    load(browser, instance, README, WARM);
+                    for (String page : LARGE_PAGES) {
+                        load(browser, instance, page, WARM);
+                    }
+                }
+            }
+
+            JsBridgeRoundTripBenchmark.onFx(() -> {
+                stage[0].close();
+                browser.dispose();
+                return null;
+            });
+        }
+    }
+
+    void load(Browser browser, int instance, String page, String kind) throws Exception {
+        String url = ClasspathResourceServer.getURL(instance, "/" + page + ".html");
+        Platform.runLater(() -> browser.load(url));
+        await(page, kind);
+    }
+
+    void await(String page, String kind) throws InterruptedException {
+        PageLoadTiming timing = myCompleted.poll(myTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (timing == null) {
+            throw new IllegalStateException(page + " " + kind + " load did not complete in " + myTimeoutMillis + " ms");
+        }
+        myTimings.computeIfAbsent(page + "." + kind, key -> new ArrayList<>()).add(timing);
+    }
+
+    /**
+     * @param timings    page loads
+     * @param phase      phase index
+     * @param percentile p50, p90, p99 or max
+     * @return nearest rank percentile in ms
+     */
+    static double percentileMillis(ArrayList<PageLoadTiming> timings, int phase, String percentile) {
+        long[] nanos = new long[timings.size()];
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = timings.get(i).getPhaseNanos(phase);
+        }
+        Arrays.sort(nanos);
+
+        int rank;
+        if (percentile.equals("max")) {
+            rank = nanos.length;
+        } else if (percentile.startsWith("p")) {
+            rank = (int) Math.ceil(Integer.parseInt(percentile.substring(1)) / 100.0 * nanos.length);
+        } else {
+            throw new IllegalArgumentException("percentile " + percentile);
+        }
+        return nanos[Math.max(0, Math.min(nanos.length, rank) - 1)] / 1000 / 1000.0;
+    }
+
+    void report() {
+        for (Map.Entry<String, ArrayList<PageLoadTiming>> entry : myTimings.entrySet()) {
+            System.out.println(entry.getKey() + " (" + entry.getValue().size() + " loads)");
+            for (int phase = 0; phase < PageLoadTiming.PHASES.length; phase++) {
+                StringBuilder sb = new StringBuilder(String.format("  %-14s", PageLoadTiming.PHASES[phase]));
+                for (String percentile : PERCENTILES) {
+                    sb.append(String.format(" %s %9.1f", percentile, percentileMillis(entry.getValue(), phase, percentile)));
+                }
+                System.out.println(sb.append(" ms"));
+            }
+        }
+    }
+
+    /**
+     * Budget keys are page.kind.percentile.phase with ms values, page can be * for all pages,
+     * for example README.warm.p90.total=500
+     *
+     * @return number of budgets exceeded or invalid
+     */
+    int checkBudgets() {
+        int failures = 0;
+
+        for (String key : myBudgets.stringPropertyNames()) {
+            String[] parts = key.split("\\.");
+            int phase = parts.length == 4 ? Arrays.asList(PageLoadTiming.PHASES).indexOf(parts[3]) : -1;
+            double budget;
+
+            try {
+                budget = Double.parseDouble(myBudgets.getProperty(key).trim());
+            } catch (NumberFormatException e) {
+                budget = -1;
+            }
+
+            if (phase < 0 || budget < 0 || !Arrays.asList(PERCENTILES).contains(parts[2])) {
+                System.out.println("FAIL invalid budget " + key + "=" + myBudgets.getProperty(key));
+                failures++;
+                continue;
+            }
+
+            for (Map.Entry<String, ArrayList<PageLoadTiming>> entry : myTimings.entrySet()) {
+                String[] pageKind = entry.getKey().split("\\.");
+                if (!(parts[0].equals("*") || parts[0].equals(pageKind[0])) || !parts[1].equals(pageKind[1])) continue;
+
+                double value = percentileMillis(entry.getValue(), phase, parts[2]);
+                if (value > budget) {
+                    System.out.println(String.format("FAIL %s %s %s %.1f ms exceeds budget %s of %.1f ms", entry.getKey(), parts[3], parts[2], value, key, budget));
+                    failures++;
+                }
+            }
+        }
+        return failures;
+    }
+}
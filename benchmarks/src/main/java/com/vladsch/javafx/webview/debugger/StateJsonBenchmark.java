@@ -0,0 +1,120 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsArray;
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJson;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Script state handling done by WebViewDebugSample.init() and setState(): building state with
+ * BoxedJsObject.put(), serializing, parsing and comparing all keys with their journaled values when
+ * the whole state is replaced
+ * <p>
+ * Each key holds a scroll position object with a list of collapsed heading ids, like the state
+ * saved by the sample's page scripts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateJsonBenchmark {
+    @Param({ "10", "1000" })
+    public int keys;
+
+    BoxedJsObject myState;
+    String myText;
+    File mySnapshotFile;
+    ScriptStateJournal myJournal;
+
+    @Setup
+    public void setup() throws IOException {
+        myState = buildState(keys);
+        myText = myState.toString();
+
+        mySnapshotFile = File.createTempFile("StateJsonBenchmark", ".json");
+        mySnapshotFile.delete();
+        myJournal = new ScriptStateJournal(mySnapshotFile, 250, 500);
+        myJournal.recover();
+        myJournal.captureAll(myState);
+    }
+
+    @TearDown
+    public void tearDown() {
+        myJournal.close(2000);
+        mySnapshotFile.delete();
+        new File(mySnapshotFile.getPath() + ".journal").delete();
+    }
+
+    static BoxedJsObject buildState(int keys) {
+        BoxedJsObject state = BoxedJson.of();
+        for (int i = 0; i < keys; i++) {
+            BoxedJsObject value = BoxedJson.of();
+            value.put("x", 0);
+            value.put("y", i * 125);
+            value.put("page", "README-" + i + ".html");
+
+            BoxedJsArray collapsed = BoxedJson.arrayFrom("[]");
+            for (int j = 0; j < 5; j++) {
+                collapsed.add("heading-" + i + "-" + j);
+            }
+            value.put("collapsed", collapsed);
+            state.put("key" + i, value);
+        }
+        return state;
+    }
+
+    @Benchmark
+    public void put(Blackhole blackhole) {
+        blackhole.consume(buildState(keys));
+    }
+
+    @Benchmark
+    public void serialize(Blackhole blackhole) {
+        blackhole.consume(myState.toString());
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        blackhole.consume(BoxedJson.boxedFrom(new StringReader(myText)));
+    }
+
+    @Benchmark
+    public void captureUnchanged(Blackhole blackhole) {
+        // setState() with the whole state unchanged, every key is serialized and compared
+        myJournal.captureAll(myState);
+        blackhole.consume(myJournal);
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log handler which hands events to a background writer thread
+ * <p>
+ * Level is checked before an event is queued. Events are kept in a pre-allocated ring of slots,
+ * producers claim a slot with a CAS on the tail and publish it by writing the slot's sequence,
+ * the single writer thread consumes slots in order and passes them to log4j appenders with
+ * the original timestamp and thread name. The writer parks while the ring is empty, the producer
+ * publishing the slot it waits for unparks it.
+ * <p>
+ * When the ring is full, events below WARN are dropped and counted. WARN and ERROR wait up to
+ * maxWaitMillis for a free slot before being dropped, so loss is bounded to errors only when
+ * the writer is stalled.
+ */
+class AsyncLogHandler extends LogHandler {
+    private static final String FQCN = AsyncLogHandler.class.getName();
+
+    private final Logger myLogger;
+    private final Slot[] mySlots;
+    private final AtomicLongArray myPublished;
+    private final int myMask;
+    private final long myMaxWaitNanos;
+    private final AtomicLong myTail = new AtomicLong();
+    private volatile long myHead = 0;
+    private volatile boolean myRunning = true;
+    private final Thread myWriter;
+
+    // metrics
+    private final LongAdder myEnqueued = new LongAdder();
+    private final LongAdder myDropped = new LongAdder();
+    private final LongAdder myEnqueueNanos = new LongAdder();
+    private final AtomicLong myMaxEnqueueNanos = new AtomicLong();
+
+    private static class Slot {
+        long timestamp;
+        Level level;
+        Object message;
+        Throwable throwable;
+        String threadName;
+    }
+
+    /**
+     * @param logger        log4j logger
+     * @param capacity      ring capacity, rounded up to power of 2
+     * @param maxWaitMillis maximum time a WARN or ERROR event will wait for a free slot
+     */
+    AsyncLogHandler(@NotNull Logger logger, int capacity, long maxWaitMillis) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        myLogger = logger;
+        mySlots = new Slot[size];
+        myPublished = new AtomicLongArray(size);
+        myMask = size - 1;
+        myMaxWaitNanos = maxWaitMillis * 1000_000L;
+
+        for (int i = 0; i < size; i++) {
+            mySlots[i] = new Slot();
+            myPublished.set(i, -1);
+        }
+
+        myWriter = new Thread(this::writerLoop, "AsyncLogHandler");
+        myWriter.setDaemon(true);
+        myWriter.start();
+    }
+
+    /**
+     * Log info through the installed handler, message is converted to string only if it is logged
+     *
+     * @param message message
+     */
+    static void logInfo(@NotNull Object message) {
+        LogHandler handler = LogHandler.LOG_HANDLER;
+        if (handler instanceof AsyncLogHandler) {
+            ((AsyncLogHandler) handler).log(Level.INFO, message, null);
+        } else if (handler != null) {
+            handler.info(String.valueOf(message));
+        }
+    }
+
+    /**
+     * Check level of the installed handler before building a message, other handlers only
+     * report trace and debug levels
+     *
+     * @param level level
+     * @return true if a message at level is logged
+     */
+    static boolean isEnabled(@NotNull Level level) {
+        LogHandler handler = LogHandler.LOG_HANDLER;
+        if (handler instanceof AsyncLogHandler) return ((AsyncLogHandler) handler).myLogger.isEnabledFor(level);
+        if (handler == null) return false;
+        if (level == Level.TRACE) return handler.isTraceEnabled();
+        if (level == Level.DEBUG) return handler.isDebugEnabled();
+        return true;
+    }
+
+    void log(@NotNull Level level, @NotNull Object message, @Nullable Throwable throwable) {
+        if (!myRunning || !myLogger.isEnabledFor(level)) return;
+
+        long start = System.nanoTime();
+        long tail = claim(level.isGreaterOrEqual(Level.WARN) ? start + myMaxWaitNanos : start);
+
+        if (tail < 0) {
+            myDropped.increment();
+            return;
+        }
+
+        int index = (int) (tail & myMask);
+        Slot slot = mySlots[index];
+        slot.timestamp = System.currentTimeMillis();
+        slot.level = level;
+        slot.message = message;
+        slot.throwable = throwable;
+        slot.threadName = Thread.currentThread().getName();
+        myPublished.set(index, tail);
+
+        // writer is waiting for this slot, ring went from empty to non-empty
+        if (myHead == tail) {
+            LockSupport.unpark(myWriter);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        myEnqueued.increment();
+        myEnqueueNanos.add(elapsed);
+
+        long max;
+        while (elapsed > (max = myMaxEnqueueNanos.get()) && !myMaxEnqueueNanos.compareAndSet(max, elapsed)) ;
+    }
+
+    private long claim(long deadline) {
+        while (true) {
+            long tail = myTail.get();
+            if (tail - myHead >= mySlots.length) {
+                // full
+                if (System.nanoTime() >= deadline) return -1;
+                LockSupport.parkNanos(50_000);
+                continue;
+            }
+            if (myTail.compareAndSet(tail, tail + 1)) return tail;
+        }
+    }
+
+    private void writerLoop() {
+        while (myRunning || myHead < myTail.get()) {
+            if (!drain()) {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private boolean drain() {
+        boolean drained = false;
+        long head = myHead;
+
+        while (true) {
+            int index = (int) (head & myMask);
+            if (myPublished.get(index) != head) break;
+
+            Slot slot = mySlots[index];
+            LoggingEvent event = new LoggingEvent(FQCN, myLogger, slot.timestamp, slot.level, String.valueOf(slot.message), slot.threadName,
+                    slot.throwable == null ? null : new ThrowableInformation(slot.throwable), null, null, null);
+
+            slot.message = null;
+            slot.throwable = null;
+            myHead = ++head;
+            drained = true;
+
+            try {
+                myLogger.callAppenders(event);
+            } catch (Throwable ignored) {
+
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Stop accepting events and wait for queued events to be written
+     *
+     * @param timeoutMillis maximum time to wait
+     */
+    void close(long timeoutMillis) {
+        myRunning = false;
+        LockSupport.unpark(myWriter);
+        try {
+            myWriter.join(timeoutMillis);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    long getEnqueuedCount() {
+        return myEnqueued.sum();
+    }
+
+    long getDroppedCount() {
+        return myDropped.sum();
+    }
+
+    long getQueueDepth() {
+        return myTail.get() - myHead;
+    }
+
+    double getAverageEnqueueNanos() {
+        long count = myEnqueued.sum();
+        return count == 0 ? 0 : (double) myEnqueueNanos.sum() / count;
+    }
+
+    long getMaxEnqueueNanos() {
+        return myMaxEnqueueNanos.get();
+    }
+
+    String getStatsSummary() {
+        return String.format("logged: %d, dropped: %d, queued: %d, avg enqueue: %.0f ns, max enqueue: %d ns",
+                getEnqueuedCount(), getDroppedCount(), getQueueDepth(), getAverageEnqueueNanos(), getMaxEnqueueNanos());
+    }
+
+    @Override
+    public void trace(@NotNull String message) { log(Level.TRACE, message, null); }
+
+    @Override
+    public void trace(@NotNull String message, @NotNull Throwable t) { log(Level.TRACE, message, t); }
+
+    @Override
+    public void trace(@NotNull Throwable t) { log(Level.TRACE, t, null); }
+
+    @Override
+    public boolean isTraceEnabled() { return myLogger.isTraceEnabled(); }
+
+    @Override
+    public void debug(@NotNull String message) { log(Level.DEBUG, message, null); }
+
+    @Override
+    public void debug(@NotNull String message, @NotNull Throwable t) { log(Level.DEBUG, message, t); }
+
+    @Override
+    public void debug(@NotNull Throwable t) { log(Level.DEBUG, t, null); }
+
+    @Override
+    public boolean isDebugEnabled() { return myLogger.isDebugEnabled(); }
+
+    @Override
+    public void error(@NotNull String message) { log(Level.ERROR, message, null); }
+
+    @Override
+    public void error(@NotNull String message, @NotNull Throwable t) { log(Level.ERROR, message, t); }
+
+    @Override
+    public void error(@NotNull Throwable t) { log(Level.ERROR, t, null); }
+
+    @Override
+    public void info(@NotNull String message) { log(Level.INFO, message, null); }
+
+    @Override
+    public void info(@NotNull String message, @NotNull Throwable t) { log(Level.INFO, message, t); }
+
+    @Override
+    public void info(@NotNull Throwable t) { log(Level.INFO, t, null); }
+
+    @Override
+    public void warn(@NotNull String message) { log(Level.WARN, message, null); }
+
+    @Override
+    public void warn(@NotNull String message, @NotNull Throwable t) { log(Level.WARN, message, t); }
+
+    @Override
+    public void warn(@NotNull Throwable t) { log(Level.WARN, t, null); }
+}
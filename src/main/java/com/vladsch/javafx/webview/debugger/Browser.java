@@ -25,6 +25,8 @@
 
 package com.vladsch.javafx.webview.debugger;
 
+import com.vladsch.boxed.json.BoxedJson;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.concurrent.Worker;
@@ -38,6 +40,7 @@ import javafx.scene.layout.Region;
 import javafx.scene.text.FontSmoothingType;
 import javafx.scene.web.WebHistory;
 import javafx.scene.web.WebView;
+import netscape.javascript.JSObject;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.w3c.dom.Document;
@@ -48,20 +51,53 @@ import org.w3c.dom.events.EventTarget;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
 class Browser extends Region {
-    final WebView myWebView = new WebView();
-    final WebView myMessageView = new WebView();
+    final WebView myWebView;
+    final boolean myPooledWebView;
+    final @Nullable WebViewPool myWebViewPool;
+    final long myCreateTime = System.nanoTime();
+    boolean myFirstPaintReported = false;
     TextField locationField;
     BorderPane myBorderPane;
-    StringBuilder myMessageBuilder = new StringBuilder();
-    int myMessageCount = 0;
+    final MessagePane myMessagePane;
+    final int myInstance;
+
+    // instrumented start page variants served by the classpath resource server, keyed by debugging status and injected state
+    final LinkedHashMap<String, byte[]> myStartPageVariants = new LinkedHashMap<String, byte[]>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > 4;
+        }
+    };
+    // variant key of the start page last written to the public directory, set on I/O thread
+    volatile String myWrittenStartPageKey = null;
+    // state keys declared by the README.html resource, read once off the FX thread, null for all
+    static volatile String[] ourStartPageStateKeys = null;
+    static volatile boolean ourStartPageStateKeysKnown = false;
     Runnable myOnPageLoadRunnable = null;
+    Consumer<PageLoadTiming> myOnPageLoadTiming = null;
+    // page load started by load(), until pageLoadComplete() from the page
+    @Nullable PageLoadTiming myPageLoad = null;
+    Runnable myOnNewBrowser = null;
     Runnable myOnConnectionChangeRunnable = null;
 
     /* *****************************************************************************************
@@ -73,6 +109,14 @@ class Browser extends Region {
      *  Optional: state provider to allow persistent state for scripts
      *******************************************************************************************/
     final JfxScriptStateProvider myStateProvider;
+    final @Nullable ScriptStateBridge myStateBridge;
+    final ScriptConsoleSink myConsoleSink;
+    final DomEventDispatcher myEventDispatcher;
+    final BrowserMetrics myMetrics;
+    final DevToolsProtocolStats myDevToolsStats = new DevToolsProtocolStats();
+    // debug port of the Dev Tools relay, 0 if debug server is used directly
+    int myRelayPort = 0;
+    boolean myRecordDevToolsSessions = false;
 
     /* *****************************************************************************************
      *  Optional: extend JSBridge, or use an instance of DevToolsDebuggerJsBridge
@@ -82,18 +126,45 @@ class Browser extends Region {
             super(webView, webView.getEngine(), instance, stateProvider);
         }
 
+        // jsBridge.setState() goes through the state bridge so only the changed key is journaled,
+        // the library sets the whole state on the provider which then has to capture all keys
+        @Override
+        protected JfxDebugProxyJsBridge getJfxDebugProxyJsBridge() {
+            JfxDebugProxyJsBridge jsBridge = super.getJfxDebugProxyJsBridge();
+            if (myStateBridge == null) return jsBridge;
+
+            return new JfxDebugProxyJsBridgeDelegate(jsBridge) {
+                @Override
+                public void setState(String name, Object state) {
+                    Object json = state == null || "undefined".equals(state) ? null : ((JSObject) myWebView.getEngine().executeScript("JSON")).call("stringify", state);
+                    myStateBridge.setState(name, json instanceof String ? (String) json : null);
+                }
+            };
+        }
+
         // need these to update menu item state
         @Override
         public void onConnectionOpen() {
+            myMetrics.debuggerConnected();
             addMessage("Chrome Dev Tools connected");
             if (myOnConnectionChangeRunnable != null) {
                 myOnConnectionChangeRunnable.run();
             }
         }
 
+        @Override
+        protected void pageLoadComplete() {
+            super.pageLoadComplete();
+            pageLoadCompleted();
+        }
+
         @Override
         public void onConnectionClosed() {
+            myMetrics.debuggerDisconnected();
             addMessage("warn", "Chrome Dev Tools disconnected");
+            if (!myDevToolsStats.isEmpty()) {
+                addMessage("debug", "Dev Tools protocol: " + myDevToolsStats.getSummary());
+            }
             if (myOnConnectionChangeRunnable != null) {
                 myOnConnectionChangeRunnable.run();
             }
@@ -104,8 +175,12 @@ class Browser extends Region {
      *  Required: to call JSBridge.pageReloading() to inform of upcoming WebView side page reload
      *******************************************************************************************/
     public void load(final String url) {
+        myPageLoad = new PageLoadTiming(url, System.nanoTime());
+        myMetrics.pageLoadStarted();
+
         // let it know that we are reloading the page, not chrome dev tools
         myJSBridge.pageReloading();
+        myPageLoad.reloaded = System.nanoTime();
         // load the web page
         myWebView.getEngine().load(url);
     }
@@ -116,16 +191,58 @@ class Browser extends Region {
      *
      *  Optional: insert persisted JavaScript state information into the page
      *******************************************************************************************/
-    private String instrumentHtml(String html) {
+    private HtmlInstrumenter getHtmlInstrumenter() {
+        // inject only the state the page declares, the rest is fetched on demand through the bridge
+        return new HtmlInstrumenter(getHeadInsert(), stateKeys -> {
+            String stateString = getInjectedStateString(stateKeys);
+            return stateString == null ? null : getStateScript(stateString);
+        });
+    }
+
+    @Nullable
+    private String getHeadInsert() {
         // now we add our script if not debugging, because it will be injected
-        if (!myJSBridge.isDebugging()) {
-            html = html.replace("<head>", "<head>\n<script src=\"markdown-navigator.js\"></script>");
+        return myJSBridge.isDebugging() ? null : "\n<script src=\"markdown-navigator.js\"></script>";
+    }
+
+    @NotNull
+    private static String getStateScript(@NotNull String stateString) {
+        return "\n<script>\n" + stateString + "</script>";
+    }
+
+    /**
+     * State script for given keys from cached serialized values
+     *
+     * @param stateKeys keys to inject or null for all
+     * @return script or null if nothing to inject
+     */
+    @Nullable
+    String getInjectedStateString(@Nullable String[] stateKeys) {
+        if (myStateProvider == null || myStateProvider.getState().isEmpty()) return null;
+
+        Iterable<String> keys = stateKeys == null ? myStateProvider.getState().keySet() : Arrays.asList(stateKeys);
+        StringBuilder sb = new StringBuilder();
+
+        for (String key : keys) {
+            String value = myStateProvider instanceof JournaledScriptStateProvider ? ((JournaledScriptStateProvider) myStateProvider).getSerializedState(key)
+                    : myStateProvider.getState().containsKey(key) ? myStateProvider.getState().get(key).toString() : null;
+
+            if (value != null) {
+                // injected state is not echoed back to Java when the bridge connects
+                sb.append("markdownNavigator.injectState(").append(BoxedJson.boxedOf(key).toString()).append(", ").append(value).append(");\n");
+            }
         }
-        // inject the state if it exists
-        if (myStateProvider != null && !myStateProvider.getState().isEmpty()) {
-            html = html.replace("<body>", "<body>\n<script>\n" + myJSBridge.getStateString() + "\n</script>");
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    String instrumentHtml(String html) {
+        StringWriter writer = new StringWriter(html.length() + 1024);
+        try {
+            getHtmlInstrumenter().instrument(new StringReader(html), writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
         }
-        return html;
+        return writer.toString();
     }
 
     /* *****************************************************************************************
@@ -134,10 +251,50 @@ class Browser extends Region {
     private void startDebugging(Consumer<Throwable> onStartFail, Runnable onStartSuccess) {
         if (!myJSBridge.isDebuggerEnabled()) {
             int port = getPort();
-            myJSBridge.startDebugServer(port, onStartFail, onStartSuccess);
+
+            if (getStateInt("devToolsMetrics", 1) != 0) {
+                // Dev Tools connect to the relay on the debug port, it measures protocol traffic on the way to the debug server
+                int serverPort;
+                try {
+                    serverPort = DevToolsRelay.acquire(port, myInstance, myDevToolsStats, getDevToolsRecordingDir(), file -> {
+                        Platform.runLater(() -> addMessage("Recording Dev Tools session to " + file.getPath()));
+                    }, ex -> {
+                        stopDebugging(value -> { });
+                        onStartFail.accept(ex);
+                    });
+                } catch (IOException e) {
+                    onStartFail.accept(e);
+                    return;
+                }
+
+                myRelayPort = port;
+                myJSBridge.startDebugServer(serverPort, ex -> {
+                    releaseRelay();
+                    onStartFail.accept(ex);
+                }, onStartSuccess);
+            } else {
+                myJSBridge.startDebugServer(port, onStartFail, onStartSuccess);
+            }
         }
     }
 
+    @Nullable
+    private File getDevToolsRecordingDir() {
+        return myRecordDevToolsSessions ? new File("devtools-sessions") : null;
+    }
+
+    private void releaseRelay() {
+        if (myRelayPort != 0) {
+            DevToolsRelay.release(myRelayPort, myInstance);
+            myRelayPort = 0;
+        }
+    }
+
+    String getDebuggerURL() {
+        String debugUrl = myJSBridge.getDebuggerURL();
+        return myRelayPort == 0 || debugUrl == null ? debugUrl : DevToolsRelay.getRelayURL(debugUrl, myRelayPort);
+    }
+
     /* *****************************************************************************************
      *  Required: to stop debugging connection to this web view instance
      *******************************************************************************************/
@@ -145,6 +302,7 @@ class Browser extends Region {
         if (myJSBridge.isDebuggerEnabled()) {
             myJSBridge.stopDebugServer(onStop);
         }
+        releaseRelay();
     }
 
     /* *****************************************************************************************
@@ -157,6 +315,33 @@ class Browser extends Region {
         myJSBridge.connectJsBridge();
     }
 
+    /* *****************************************************************************************
+     *  Optional: state changes from scripts go through a Java setter which notifies the
+     *            state provider, console entries are batched to a Java sink when not debugging,
+     *            must be done before connecting the JSBridge so cached state changes and
+     *            console entries made before the connection use them
+     *******************************************************************************************/
+    private void exposeScriptBridges() {
+        JSObject window = (JSObject) myWebView.getEngine().executeScript("window");
+        if (myStateBridge != null) {
+            window.setMember(ScriptStateBridge.MEMBER_NAME, myStateBridge);
+        }
+        window.setMember(ScriptConsoleSink.MEMBER_NAME, myConsoleSink);
+    }
+
+    /**
+     * Switch page console between batching to the sink and direct calls for the debugger
+     */
+    private void updateConsoleTransport() {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(this::updateConsoleTransport);
+            return;
+        }
+
+        boolean direct = myConsoleSink.isDirect();
+        myWebView.getEngine().executeScript("if (window.console && console.setDirect) console.setDirect(" + direct + ");");
+    }
+
     /* *****************************************************************************************
      *
      *  The rest is there to provide basic WebView Debug Sample to allow playing
@@ -164,27 +349,72 @@ class Browser extends Region {
      *
      *******************************************************************************************/
     public Browser(JfxScriptStateProvider stateProvider) {
+        this(stateProvider, 0, null);
+    }
+
+    /**
+     * @param stateProvider script state provider
+     * @param instance      instance id, must be unique in the process, all instances debugging on the same port share one debug server
+     * @param webViewPool   pool of warmed up web views or null to create new ones
+     */
+    public Browser(JfxScriptStateProvider stateProvider, int instance, @Nullable WebViewPool webViewPool) {
         myStateProvider = stateProvider;
+        myStateBridge = stateProvider == null ? null : new ScriptStateBridge(stateProvider);
+        myInstance = instance;
+
+        myWebViewPool = webViewPool;
+        myPooledWebView = webViewPool != null && webViewPool.hasWarmed();
+        myWebView = webViewPool != null ? webViewPool.acquire() : new WebView();
+
+        // lazy message view is created after the first paint of the page, so page and message view engines do not compete on startup
+        myMessagePane = new MessagePane(() -> webViewPool != null ? webViewPool.acquire() : new WebView(),
+                getStateInt("lazyMessageView", 1) != 0,
+                getStateInt("messageHistorySize", 5000),
+                getStateInt("messageBatchSize", 250),
+                getStateInt("messageQueueSize", 10000),
+                getStateInt("messageFlushDelay", 16));
 
         // create JSBridge Instance
-        myJSBridge = new DevToolsJsBridge(myWebView, 0, myStateProvider);
+        myJSBridge = new DevToolsJsBridge(myWebView, myInstance, myStateProvider);
+        myConsoleSink = new ScriptConsoleSink(myJSBridge, myInstance);
+
+        /* *****************************************************************************************
+         *  Optional: DOM events routed to Java handlers by type and selector, the page matches
+         *            and sends only the requested fields. JavaScript handlers calling
+         *            markdownNavigator.setEventHandledBy("IdentifyingTextForDebugging")
+         *            pass it in the handledBy field.
+         *******************************************************************************************/
+        myEventDispatcher = new DomEventDispatcher();
+        myEventDispatcher.on("click", "*", false, fields -> {
+            String handledBy = fields.getJsString("handledBy").getString("");
+            if (!handledBy.isEmpty()) {
+                addMessage("warn", "onClick: default prevented by: " + handledBy);
+            } else {
+                String id = fields.getJsString("id").getString("");
+                addMessage("onClick: clicked on " + fields.getJsString("nodeName").getString("") + (id.isEmpty() ? "" : "#" + id));
+            }
+        }, "nodeName", "id", "handledBy");
 
-        locationField = new TextField(Browser.getURL(Browser.getReadmeFile()));
+        // page lifecycle and bridge metrics over JMX
+        myMetrics = new BrowserMetrics(myInstance, myConsoleSink, myStateBridge, myEventDispatcher, myDevToolsStats);
+        myMetrics.register();
+
+        locationField = new TextField(getStartPageURL());
         locationField.setOnAction(e -> {
             load(getUrl(locationField.getText()));
         });
 
         //myMessageView.setMaxHeight(100);
         final SplitPane splitPane = new SplitPane();
-        splitPane.getItems().addAll(this, myMessageView);
+        splitPane.getItems().addAll(this, myMessagePane.getNode());
         splitPane.setOrientation(Orientation.VERTICAL);
         float splitPosition = 0.9f;
 
         if (myStateProvider != null) {
             splitPosition = myStateProvider.getState().evalFloat("splitPosition", splitPosition);
-            myStateProvider.getState().put("splitPosition", splitPosition);
+            JournaledScriptStateProvider.putState(myStateProvider, "splitPosition", splitPosition);
             splitPane.getDividers().get(0).positionProperty().addListener((observable, oldValue, newValue) -> {
-                myStateProvider.getState().put("splitPosition", newValue.floatValue());
+                JournaledScriptStateProvider.putState(myStateProvider, "splitPosition", newValue.floatValue());
             });
         }
         splitPane.setDividerPositions(splitPosition);
@@ -201,119 +431,144 @@ class Browser extends Region {
         createContextMenu();
 
         // process page loading
-        myWebView.getEngine().getLoadWorker().stateProperty().addListener(
+        myWebView.getEngine().getLoadWorker().stateProperty().addListener(FxStallWatchdog.wrap("load worker state",
                 (ov, oldState, newState) -> {
+                    if (newState == Worker.State.FAILED) {
+                        myMetrics.pageLoadFailed();
+                        myMessagePane.release();
+                    } else if (newState == Worker.State.CANCELLED) {
+                        myMetrics.pageLoadCancelled();
+                    }
+
                     if (newState == Worker.State.SUCCEEDED) {
+                        myMetrics.pageLoadSucceeded();
+
                         /* *****************************************************************************************
                          *  Required: to establish a JSBridge connection to JavaScript, called on page loading SUCCEEDED
                          *            does not need to be a separate method, only brought out for illustration purposes
                          *******************************************************************************************/
-                        connectJSBridge();
+                        PageLoadTiming pageLoad = myPageLoad;
+                        if (pageLoad != null && pageLoad.succeeded == 0) {
+                            pageLoad.succeeded = System.nanoTime();
+                        }
+
+                        exposeScriptBridges();
+                        if (pageLoad != null && pageLoad.bridgeStart == 0) {
+                            pageLoad.bridgeStart = System.nanoTime();
+                        }
+                        FxStallWatchdog.run("connectJSBridge", this::connectJSBridge);
+
+                        if (!myEventDispatcher.install(myWebView.getEngine())) {
+                            addFallbackClickListener();
+                        }
 
-                        /* *****************************************************************************************
-                         *  Optional: JavaScript event.preventDefault(), event.stopPropagation() and
-                         *            event.stopImmediatePropagation() don't work on Java registered listeners.
-                         *            The alternative mechanism is for JavaScript event handler to set
-                         *            markdownNavigator.setEventHandledBy("IdentifyingTextForDebugging")
-                         *            Then in Java event listener to check for this value not being null,
-                         *            and clear it for next use.
-                         *******************************************************************************************/
-                        EventListener clickListener = evt -> {
-                            if (myJSBridge.getJSEventHandledBy() != null) {
-                                addMessage("warn", "onClick: default prevented by: " + myJSBridge.getJSEventHandledBy());
-                                myJSBridge.clearJSEventHandledBy();
-                            } else {
-                                Node element = (Node) evt.getTarget();
-                                Node id = element.getAttributes().getNamedItem("id");
-                                String idSelector = id != null ? "#" + id.getNodeValue() : "";
-                                addMessage("onClick: clicked on " + element.getNodeName() + idSelector);
-                            }
-                        };
-
-                        Document document = myWebView.getEngine().getDocument();
-                        ((EventTarget) document).addEventListener("click", clickListener, false);
                         locationField.setText(myWebView.getEngine().getLocation());
 
                         if (myOnPageLoadRunnable != null) {
                             myOnPageLoadRunnable.run();
                         }
+
+                        if (!myFirstPaintReported) {
+                            myFirstPaintReported = true;
+                            reportFirstPaint();
+                        }
                     }
-                });
+                }));
 
         loadStartPage();
     }
 
+    /* *****************************************************************************************
+     *  Optional: for pages without markdown-navigator.js, events go to Java registered listeners.
+     *            JavaScript event.preventDefault(), event.stopPropagation() and
+     *            event.stopImmediatePropagation() don't work on Java registered listeners.
+     *            The alternative mechanism is for JavaScript event handler to set
+     *            markdownNavigator.setEventHandledBy("IdentifyingTextForDebugging")
+     *            Then in Java event listener to check for this value not being null,
+     *            and clear it for next use.
+     *******************************************************************************************/
+    private void addFallbackClickListener() {
+        EventListener clickListener = evt -> {
+            if (myJSBridge.getJSEventHandledBy() != null) {
+                addMessage("warn", "onClick: default prevented by: " + myJSBridge.getJSEventHandledBy());
+                myJSBridge.clearJSEventHandledBy();
+            } else {
+                Node element = (Node) evt.getTarget();
+                Node id = element.getAttributes().getNamedItem("id");
+                String idSelector = id != null ? "#" + id.getNodeValue() : "";
+                addMessage("onClick: clicked on " + element.getNodeName() + idSelector);
+            }
+        };
+
+        Document document = myWebView.getEngine().getDocument();
+        if (document != null) {
+            ((EventTarget) document).addEventListener("click", clickListener, false);
+        }
+    }
+
+    private void pageLoadCompleted() {
+        PageLoadTiming pageLoad = myPageLoad;
+        if (pageLoad == null || pageLoad.bridgeStart == 0 || pageLoad.isComplete()) return;
+
+        pageLoad.complete = System.nanoTime();
+        myPageLoad = null;
+        addMessage("debug", pageLoad.toString());
+        myMetrics.pageLoadCompleted(pageLoad);
+
+        if (myOnPageLoadTiming != null) {
+            myOnPageLoadTiming.accept(pageLoad);
+        }
+    }
+
+    /**
+     * Report time from construction to the first pulse after the first page load, that pulse paints the page
+     */
+    private void reportFirstPaint() {
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                stop();
+                long millis = (System.nanoTime() - myCreateTime) / 1_000_000;
+                boolean viewDeferred = !myMessagePane.isViewCreated();
+                myMetrics.firstPaint(millis);
+                myMessagePane.release();
+                addMessage("debug", "First paint in " + millis + " ms, " + (myPooledWebView ? "warmed up WebView from pool" : "new WebView")
+                        + (viewDeferred ? ", message view deferred" : ""));
+            }
+        }.start();
+    }
+
     void addMessage(String message) {
         addMessage("log", message);
     }
 
     void addMessage(String type, String message) {
-        myMessageCount++;
-        String countedMessage = "[" + myMessageCount + "]" + message;
-        System.out.println(countedMessage);
-        String suffix = "</span><br/>\n";
-        String prefix;
-
-        switch (type) {
-            case "warn":
-                prefix = "<span class='msg warn'>";
-                break;
-            case "error":
-                prefix = "<span class='msg error'>";
-                break;
-            case "debug":
-                prefix = "<span class='msg debug'>";
-                break;
-            default:
-            case "log":
-                prefix = "<span class='msg'>";
-                break;
+        ConsoleMessage consoleMessage = myMessagePane.post(type, message);
+        AsyncLogHandler.logInfo(consoleMessage);
+
+        // cannot use script console.log until page is loaded, otherwise will mess up state machine for log handling
+        //if (myJSBridge.isDebugging()) {
+        //    myWebView.getEngine().executeScript(String.format("console.%s(\"%s\");", type, message));
+        //}
+    }
+
+    /**
+     * Stop debugging this instance and release its resources, debug server keeps running for other instances
+     */
+    void dispose() {
+        if (myJSBridge.isDebuggerEnabled()) {
+            stopDebugging(value -> { });
         }
 
-        Platform.runLater(() -> {
-            File messageFile = new File("public/messages.html");
-            myMessageBuilder.append(prefix).append("<span class='msgCount'>[").append(myMessageCount).append("]</span> ").append(message).append(suffix);
-            try (FileWriter writer = new FileWriter(messageFile)) {
-                writer.write(
-                        "<head>\n" +
-                                "<html>\n" +
-                                "<head>\n" +
-                                "<meta charset=\"UTF-8\">\n" +
-                                "<link rel=\"stylesheet\" href=\"layout-fx.css\">\n" +
-                                "<link rel=\"stylesheet\" href=\"default-fx.css\">" +
-                                "<style>\n" +
-                                ".container { width: 100%; }\n" +
-                                ".markdown-body { line-height:1.1; }\n" +
-                                ".msg { font-size: 0.7em; font-family:Consolas,Inconsolata,Courier,monospace; margin: 0; padding:0; }\n" +
-                                ".warn { background-color: hsl(50, 95%, 90%); }\n" +
-                                ".error { color: #CC0040; background-color: hsl(0, 95%, 95%); font-weight:bold; }\n" +
-                                ".debug { color: #999999 }\n" +
-                                ".msgCount { display:inline-block; padding:0; width:30px;text-align:right;}\n" +
-                                "</style>\n" +
-                                "</head>\n" +
-                                "<body>\n" +
-                                "<article class=\"markdown-body\">");
-                writer.write(myMessageBuilder.toString());
-                writer.write(
-                        "</article>\n" +
-                                "<script>\n" +
-                                " window.scrollTo(window.pageXOffset, 100000000);\n" +
-                                "</script>\n" +
-                                "</body>\n" +
-                                "</html>\n");
-                writer.flush();
-                writer.close();
-
-                myMessageView.getEngine().load(getURL(messageFile));
-
-                // cannot use script console.log until page is loaded, otherwise will mess up state machine for log handling
-                //if (myJSBridge.isDebugging()) {
-                //    myWebView.getEngine().executeScript(String.format("console.%s(\"%s\");", type, message));
-                //}
-            } catch (Exception ignored) {
+        if (ClasspathResourceServer.isRegistered()) {
+            ClasspathResourceServer.getInstance().removePages(myInstance);
+        }
 
-            }
-        });
+        IoExecutor.getInstance().cancel(getStartPageTaskKey());
+        myStartPageVariants.clear();
+        myWebView.getEngine().load(null);
+        myMessagePane.close();
+        myMetrics.unregister();
     }
 
     public BorderPane getRootPane() {
@@ -337,28 +592,121 @@ class Browser extends Region {
     }
 
     void loadStartPage() {
-        // if not debugging then need to instrument the file
-        File htmlFile = getReadmeFile();
+        if (!ourStartPageStateKeysKnown) {
+            // declared keys only need the head of the page, read once off the FX thread
+            IoExecutor.getInstance().submit(getStartPageTaskKey(), Browser::readStartPageStateKeys, stateKeys -> {
+                ourStartPageStateKeys = stateKeys;
+                ourStartPageStateKeysKnown = true;
+                loadStartPage();
+            }, this::startPageFailed);
+            return;
+        }
 
-        // copy the HTML sample to app/public directory so we can change its content dynamically to reflect saved state
-        // and inject JSBridge helper when the debugger is not connected
-        try {
-            FileWriter fileWriter = new FileWriter(htmlFile);
-            WebViewDebugSample.copy(WebViewDebugSample.class.getResourceAsStream("/README.html"), fileWriter, this::instrumentHtml);
-            fileWriter.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(1);
+        // only the inserts are computed here, state is owned by the FX thread, the page is streamed on the I/O thread
+        // page content only depends on debugging status and injected state, unchanged variant is not instrumented again
+        String headInsert = getHeadInsert();
+        String stateString = getInjectedStateString(ourStartPageStateKeys);
+        String bodyInsert = stateString == null ? null : getStateScript(stateString);
+        String variantKey = (headInsert == null ? "debugging\n" : "\n") + (stateString == null ? "" : stateString);
+
+        if (ClasspathResourceServer.isRegistered()) {
+            // served by the sample: protocol handler from memory
+            byte[] page = myStartPageVariants.get(variantKey);
+            if (page != null) {
+                setStartPage(page);
+                return;
+            }
+
+            IoExecutor.getInstance().submit(getStartPageTaskKey(), () -> {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                instrumentStartPage(headInsert, bodyInsert, new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+                return outputStream.toByteArray();
+            }, instrumented -> {
+                myStartPageVariants.put(variantKey, instrumented);
+                setStartPage(instrumented);
+            }, this::startPageFailed);
+        } else {
+            // copy the HTML sample to app/public directory so we can change its content dynamically to reflect saved state
+            // and inject JSBridge helper when the debugger is not connected, only the last of quick reloads loads the page
+            File htmlFile = getReadmeFile(myInstance);
+            IoExecutor.getInstance().submit(getStartPageTaskKey(), () -> {
+                writeStartPage(htmlFile, variantKey, headInsert, bodyInsert);
+                return htmlFile;
+            }, written -> showStartPage(), this::startPageFailed);
         }
+    }
+
+    private String getStartPageTaskKey() {
+        return "start-page-" + myInstance;
+    }
 
+    private void showStartPage() {
         updateViewOptions();
-        String url = getURL(htmlFile);
-        load(url);
+        load(getStartPageURL());
+    }
+
+    private void startPageFailed(@NotNull Throwable e) {
+        addMessage("error", "Start page not loaded: " + e);
+    }
+
+    private void setStartPage(@NotNull byte[] page) {
+        ClasspathResourceServer.getInstance().setPage(myInstance, "/README.html", page);
+        showStartPage();
+    }
+
+    @NotNull
+    private static Reader openStartPageSource() {
+        return new InputStreamReader(WebViewDebugSample.class.getResourceAsStream("/README.html"), StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    static String[] readStartPageStateKeys() throws IOException {
+        try (Reader reader = openStartPageSource()) {
+            return HtmlInstrumenter.readStateKeys(reader);
+        }
+    }
+
+    // called on I/O thread, the file is replaced atomically so a loading page never sees a partial file
+    private void writeStartPage(@NotNull File htmlFile, @NotNull String variantKey, @Nullable String headInsert, @Nullable String bodyInsert) throws IOException {
+        if (variantKey.equals(myWrittenStartPageKey) && htmlFile.isFile()) return;
+
+        myWrittenStartPageKey = null;
+        File tmpFile = new File(htmlFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8)) {
+            instrumentStartPage(headInsert, bodyInsert, writer);
+        }
+        Files.move(tmpFile.toPath(), htmlFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        myWrittenStartPageKey = variantKey;
+    }
+
+    // called on I/O thread, streams the resource so the page is never held in memory as a whole
+    private static void instrumentStartPage(@Nullable String headInsert, @Nullable String bodyInsert, @NotNull Writer writer) throws IOException {
+        try (Reader reader = openStartPageSource()) {
+            new HtmlInstrumenter(headInsert, bodyInsert).instrument(reader, writer);
+        }
+    }
+
+    @NotNull
+    String getStartPageURL() {
+        if (ClasspathResourceServer.isRegistered()) {
+            return ClasspathResourceServer.getURL(myInstance, "/README.html");
+        }
+        return getURL(getReadmeFile(myInstance));
+    }
+
+    boolean isStartPage(@Nullable String location) {
+        return location != null && location.replace("file:///", "file:/").equals(getStartPageURL());
     }
 
     @NotNull
     public static File getReadmeFile() {
-        return new File("public/README.html");
+        return getReadmeFile(0);
+    }
+
+    @NotNull
+    public static File getReadmeFile(int instance) {
+        // each instance has its own copy, their debugging status differs
+        return new File(instance == 0 ? "public/README.html" : "public/README-" + instance + ".html");
     }
 
     void updateViewOptions() {
@@ -405,8 +753,7 @@ class Browser extends Region {
         ContextMenu contextMenu = new ContextMenu();
         MenuItem reload = new MenuItem("Reload Page");
         reload.setOnAction(e -> {
-            String location = myWebView.getEngine().getLocation();
-            if (location.replace("file:///", "file:/").equals(getURL(getReadmeFile()))) {
+            if (isStartPage(myWebView.getEngine().getLocation())) {
                 // use the url to reload, that way if debugging status changed the page content will be properly updated
                 loadStartPage();
             } else {
@@ -469,7 +816,7 @@ class Browser extends Region {
         MenuItem copyDebugUrl = new MenuItem("Copy Debug Server URL");
         copyDebugUrl.setOnAction(e -> {
             // from: https://stackoverflow.com/questions/6710350/copying-text-to-the-clipboard-using-java
-            StringSelection stringSelection = new StringSelection(myJSBridge.getDebuggerURL());
+            StringSelection stringSelection = new StringSelection(getDebuggerURL());
             Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
             clipboard.setContents(stringSelection, null);
         });
@@ -512,6 +859,7 @@ class Browser extends Region {
                         addMessage("Debug server connection closed");
                     }
                     updateDebugOff.run();
+                    updateConsoleTransport();
                 });
             } else {
                 startDebugging((ex) -> {
@@ -519,17 +867,71 @@ class Browser extends Region {
                     addMessage("error", "Debug server failed to start: " + ex.getMessage());
                     updateDebugOff.run();
                 }, () -> {
-                    addMessage("Debug server started, debug URL: " + myJSBridge.getDebuggerURL());
+                    addMessage("Debug server started, debug URL: " + getDebuggerURL());
                     // can copy debug URL to clipboard
                     updateDebugOn.run();
+                    updateConsoleTransport();
                 });
             }
         });
 
-        contextMenu.getItems().addAll(reload, reloadAndPause, reloadAndBreak, goBack, goForward, debugPort, debuggingEnabled, copyDebugUrl);
+        CheckMenuItem recordSessions = new CheckMenuItem("Record Dev Tools Sessions");
+        recordSessions.setDisable(getStateInt("devToolsMetrics", 1) == 0);
+        recordSessions.setOnAction(e -> {
+            // applies to Dev Tools connections made from now on
+            myRecordDevToolsSessions = recordSessions.isSelected();
+            if (myRelayPort != 0) {
+                DevToolsRelay.setRecording(myRelayPort, myInstance, getDevToolsRecordingDir());
+            }
+        });
+
+        MenuItem messageStats = new MenuItem("Show Message Stats");
+        messageStats.setOnAction(e -> {
+            addMessage("debug", "Message stats: " + myMessagePane.getStatsSummary());
+            if (LogHandler.LOG_HANDLER instanceof AsyncLogHandler) {
+                addMessage("debug", "Log stats: " + ((AsyncLogHandler) LogHandler.LOG_HANDLER).getStatsSummary());
+            }
+            if (myWebViewPool != null) {
+                addMessage("debug", "WebView pool stats: " + myWebViewPool.getStatsSummary());
+            }
+            addMessage("debug", "Console batch stats: " + myConsoleSink.getStatsSummary());
+            addMessage("debug", "DOM event stats: " + myEventDispatcher.getStatsSummary());
+            addMessage("debug", "Page load metrics: " + myMetrics.getStatsSummary());
+            addMessage("debug", "Dev Tools protocol: " + myDevToolsStats.getSummary());
+            addMessage("debug", "File I/O: " + IoExecutor.getInstance().getStatsSummary());
+            if (myStateBridge != null) {
+                addMessage("debug", "Script state stats: " + myStateBridge.getStatsSummary());
+            }
+        });
+
+        MenuItem exportMessages = new MenuItem("Export Message Log");
+        exportMessages.setOnAction(e -> myMessagePane.export(new File("WebViewDebugSample-messages.log"), this::addMessage));
+
+        MenuItem newBrowser = new MenuItem("Open New Tab");
+        newBrowser.setOnAction(e -> {
+            if (myOnNewBrowser != null) myOnNewBrowser.run();
+        });
+
+        MenuItem fxStalls = new MenuItem("Show FX Stalls");
+        fxStalls.setOnAction(e -> {
+            FxStallWatchdog watchdog = FxStallWatchdog.getInstance();
+            if (watchdog == null) {
+                addMessage("debug", "FX stall watchdog is disabled");
+                return;
+            }
+
+            addMessage("debug", "FX thread: " + watchdog.getStatsSummary());
+            for (FxStallWatchdog.StallReport report : watchdog.getReports()) {
+                addMessage("warn", report.toString());
+            }
+        });
+
+        contextMenu.getItems().addAll(reload, reloadAndPause, reloadAndBreak, goBack, goForward, debugPort, debuggingEnabled, copyDebugUrl, recordSessions, messageStats, fxStalls, exportMessages, newBrowser);
+        FxStallWatchdog.wrapActions(contextMenu.getItems());
 
         myWebView.setOnMousePressed(e -> {
             if (e.getButton() == MouseButton.SECONDARY) {
+                newBrowser.setVisible(myOnNewBrowser != null);
                 contextMenu.show(myWebView, e.getScreenX(), e.getScreenY());
             } else {
                 contextMenu.hide();
@@ -539,6 +941,10 @@ class Browser extends Region {
         updateDebugOff.run();
     }
 
+    private int getStateInt(String name, int defaultValue) {
+        return myStateProvider != null ? myStateProvider.getState().getJsNumber(name).intValue(defaultValue) : defaultValue;
+    }
+
     private int getPort() {
         assert myStateProvider != null;
         return myStateProvider.getState().getJsNumber("debugPort").intValue(51723);
@@ -546,7 +952,7 @@ class Browser extends Region {
 
     private void setPort(int port) {
         assert myStateProvider != null;
-        myStateProvider.getState().put("debugPort", port);
+        JournaledScriptStateProvider.putState(myStateProvider, "debugPort", port);
     }
 
     @Override
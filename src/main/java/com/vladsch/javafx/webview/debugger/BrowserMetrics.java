@@ -0,0 +1,254 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Browser metrics, counters and histograms are updated as events happen and only summarized
+ * when read
+ * <p>
+ * Console, state and DOM event counts are read from the bridge objects which already keep them.
+ */
+class BrowserMetrics implements BrowserMetricsMXBean {
+    static final String DOMAIN = "com.vladsch.javafx.webview.debugger";
+
+    private final int myInstance;
+    private final ScriptConsoleSink myConsoleSink;
+    private final @Nullable ScriptStateBridge myStateBridge;
+    private final DomEventDispatcher myEventDispatcher;
+    private final DevToolsProtocolStats myDevToolsStats;
+
+    private final LongAdder myPageLoadsStarted = new LongAdder();
+    private final LongAdder myPageLoadsSucceeded = new LongAdder();
+    private final LongAdder myPageLoadsFailed = new LongAdder();
+    private final LongAdder myPageLoadsCancelled = new LongAdder();
+    private final LatencyHistogram myPageLoadTime = new LatencyHistogram();
+    private final LatencyHistogram myPageLoadingTime = new LatencyHistogram();
+    private final LatencyHistogram myJsBridgeConnectTime = new LatencyHistogram();
+    private final LongAdder myDebuggerConnections = new LongAdder();
+    private final LongAdder myDebuggerDisconnections = new LongAdder();
+    private final LatencyHistogram myDebuggerSessionTime = new LatencyHistogram();
+    private volatile long myDebuggerConnectTime = 0;
+    private volatile long myFirstPaintMillis = -1;
+    private ObjectName myObjectName;
+
+    BrowserMetrics(int instance, @NotNull ScriptConsoleSink consoleSink, @Nullable ScriptStateBridge stateBridge, @NotNull DomEventDispatcher eventDispatcher, @NotNull DevToolsProtocolStats devToolsStats) {
+        myInstance = instance;
+        myConsoleSink = consoleSink;
+        myStateBridge = stateBridge;
+        myEventDispatcher = eventDispatcher;
+        myDevToolsStats = devToolsStats;
+    }
+
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=Browser,instance=" + myInstance);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            myObjectName = objectName;
+        } catch (JMException e) {
+            LogHandler.LOG_HANDLER.warn("Browser metrics not registered: " + e.getMessage());
+        }
+    }
+
+    void unregister() {
+        if (myObjectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(myObjectName);
+            } catch (JMException ignored) {
+
+            }
+            myObjectName = null;
+        }
+    }
+
+    void pageLoadStarted() {
+        myPageLoadsStarted.increment();
+    }
+
+    void firstPaint(long millis) {
+        myFirstPaintMillis = millis;
+    }
+
+    void pageLoadSucceeded() {
+        myPageLoadsSucceeded.increment();
+    }
+
+    void pageLoadFailed() {
+        myPageLoadsFailed.increment();
+    }
+
+    void pageLoadCancelled() {
+        myPageLoadsCancelled.increment();
+    }
+
+    void pageLoadCompleted(@NotNull PageLoadTiming pageLoad) {
+        myPageLoadTime.record(pageLoad.getPhaseNanos(PageLoadTiming.TOTAL));
+        myPageLoadingTime.record(pageLoad.succeeded - pageLoad.loadStart);
+        myJsBridgeConnectTime.record(pageLoad.getPhaseNanos(PageLoadTiming.JS_BRIDGE));
+    }
+
+    void debuggerConnected() {
+        myDebuggerConnections.increment();
+        myDebuggerConnectTime = System.nanoTime();
+    }
+
+    void debuggerDisconnected() {
+        myDebuggerDisconnections.increment();
+        long connectTime = myDebuggerConnectTime;
+        if (connectTime != 0) {
+            myDebuggerConnectTime = 0;
+            myDebuggerSessionTime.record(System.nanoTime() - connectTime);
+        }
+    }
+
+    @Override
+    public int getInstance() {
+        return myInstance;
+    }
+
+    @Override
+    public long getFirstPaintMillis() {
+        return myFirstPaintMillis;
+    }
+
+    @Override
+    public long getPageLoadsStarted() {
+        return myPageLoadsStarted.sum();
+    }
+
+    @Override
+    public long getPageLoadsSucceeded() {
+        return myPageLoadsSucceeded.sum();
+    }
+
+    @Override
+    public long getPageLoadsFailed() {
+        return myPageLoadsFailed.sum();
+    }
+
+    @Override
+    public long getPageLoadsCancelled() {
+        return myPageLoadsCancelled.sum();
+    }
+
+    @Override
+    public long getPageLoadsCompleted() {
+        return myPageLoadTime.snapshot().getCount();
+    }
+
+    @Override
+    public LatencySnapshot getPageLoadTime() {
+        return myPageLoadTime.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getPageLoadingTime() {
+        return myPageLoadingTime.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getJsBridgeConnectTime() {
+        return myJsBridgeConnectTime.snapshot();
+    }
+
+    @Override
+    public long getConsoleUpcalls() {
+        return myConsoleSink.getBatchCount();
+    }
+
+    @Override
+    public long getConsoleEntries() {
+        return myConsoleSink.getEntryCount();
+    }
+
+    @Override
+    public long getConsoleEntriesDropped() {
+        return myConsoleSink.getDroppedCount();
+    }
+
+    @Override
+    public long getStateUpcalls() {
+        return myStateBridge == null ? 0 : myStateBridge.getUpcallCount();
+    }
+
+    @Override
+    public long getStateWrites() {
+        return myStateBridge == null ? 0 : myStateBridge.getWriteCount();
+    }
+
+    @Override
+    public long getDomEvents() {
+        return myEventDispatcher.getEventCount();
+    }
+
+    @Override
+    public long getDomEventUpcalls() {
+        return myEventDispatcher.getUpcallCount();
+    }
+
+    @Override
+    public long getDebuggerConnections() {
+        return myDebuggerConnections.sum();
+    }
+
+    @Override
+    public long getDebuggerDisconnections() {
+        return myDebuggerDisconnections.sum();
+    }
+
+    @Override
+    public LatencySnapshot getDebuggerSessionTime() {
+        return myDebuggerSessionTime.snapshot();
+    }
+
+    @Override
+    public String[] getDevToolsProtocolDomains() {
+        return myDevToolsStats.getDomainLines().toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getDevToolsProtocolMethods() {
+        return myDevToolsStats.getMethodLines(50).toArray(new String[0]);
+    }
+
+    String getStatsSummary() {
+        return "first paint: " + getFirstPaintMillis() + " ms, loads: " + getPageLoadsStarted() + ", succeeded: " + getPageLoadsSucceeded() + ", failed: " + getPageLoadsFailed()
+                + ", cancelled: " + getPageLoadsCancelled() + ", load time " + getPageLoadTime() + ", bridge connect time " + getJsBridgeConnectTime()
+                + ", debugger connections: " + getDebuggerConnections();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+/**
+ * Page lifecycle and bridge metrics of a Browser instance, registered as
+ * com.vladsch.javafx.webview.debugger:type=Browser,instance=N
+ * <p>
+ * Counters are totals since the browser was created, rates are left to the reader.
+ */
+public interface BrowserMetricsMXBean {
+    int getInstance();
+
+    /**
+     * @return browser construction to the first pulse after the first page load, -1 until then
+     */
+    long getFirstPaintMillis();
+
+    long getPageLoadsStarted();
+
+    long getPageLoadsSucceeded();
+
+    long getPageLoadsFailed();
+
+    long getPageLoadsCancelled();
+
+    /**
+     * @return page loads which reached pageLoadComplete() from the page script
+     */
+    long getPageLoadsCompleted();
+
+    /**
+     * @return Browser.load() to pageLoadComplete()
+     */
+    LatencySnapshot getPageLoadTime();
+
+    /**
+     * @return Browser.load() to SUCCEEDED
+     */
+    LatencySnapshot getPageLoadingTime();
+
+    /**
+     * @return connectJsBridge() to pageLoadComplete()
+     */
+    LatencySnapshot getJsBridgeConnectTime();
+
+    long getConsoleUpcalls();
+
+    long getConsoleEntries();
+
+    long getConsoleEntriesDropped();
+
+    long getStateUpcalls();
+
+    long getStateWrites();
+
+    long getDomEvents();
+
+    long getDomEventUpcalls();
+
+    long getDebuggerConnections();
+
+    long getDebuggerDisconnections();
+
+    LatencySnapshot getDebuggerSessionTime();
+
+    /**
+     * @return Dev Tools protocol messages, bytes and response latency by domain, most bytes first
+     */
+    String[] getDevToolsProtocolDomains();
+
+    /**
+     * @return Dev Tools protocol messages, bytes and response latency of the top 50 methods by bytes
+     */
+    String[] getDevToolsProtocolMethods();
+}
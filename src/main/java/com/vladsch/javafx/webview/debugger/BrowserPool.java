@@ -0,0 +1,130 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Tabbed container of browser instances sharing the script state and the debug server
+ * <p>
+ * Instance ids are never reused, Chrome Dev Tools connect to ws://localhost:port/?instance and
+ * the shared server routes them by this id, a stale debugger URL must not reach a new instance.
+ * All instances debug on the debugPort from state, the first one to start debugging starts the
+ * server, the last one to stop shuts it down.
+ */
+class BrowserPool {
+    private final JfxScriptStateProvider myStateProvider;
+    private final @Nullable WebViewPool myWebViewPool;
+    private final TabPane myTabPane = new TabPane();
+    private final LinkedHashMap<Integer, Browser> myBrowsers = new LinkedHashMap<>();
+    private int myNextInstance = 0;
+
+    /**
+     * @param stateProvider script state provider
+     * @param webViewPool   pool of warmed up web views or null to create new ones
+     */
+    BrowserPool(JfxScriptStateProvider stateProvider, @Nullable WebViewPool webViewPool) {
+        myStateProvider = stateProvider;
+        myWebViewPool = webViewPool;
+    }
+
+    @Nullable
+    WebViewPool getWebViewPool() {
+        return myWebViewPool;
+    }
+
+    @NotNull
+    TabPane getNode() {
+        return myTabPane;
+    }
+
+    /**
+     * Create a browser instance in a new tab, must be called on the FX thread
+     *
+     * @return new browser
+     */
+    @NotNull
+    Browser addBrowser() {
+        int instance = myNextInstance++;
+        Browser browser = new Browser(myStateProvider, instance, myWebViewPool);
+        browser.myOnNewBrowser = () -> myTabPane.getSelectionModel().select(getTab(addBrowser()));
+        myBrowsers.put(instance, browser);
+
+        Tab tab = new Tab("README" + (instance == 0 ? "" : " " + instance), browser.getRootPane());
+        tab.setUserData(browser);
+        tab.setOnClosed(e -> removeBrowser(browser));
+        myTabPane.getTabs().add(tab);
+        return browser;
+    }
+
+    void removeBrowser(@NotNull Browser browser) {
+        if (myBrowsers.remove(browser.myInstance) != null) {
+            Tab tab = getTab(browser);
+            if (tab != null) myTabPane.getTabs().remove(tab);
+            browser.dispose();
+        }
+    }
+
+    @Nullable
+    Browser getBrowser(int instance) {
+        return myBrowsers.get(instance);
+    }
+
+    @NotNull
+    Collection<Browser> getBrowsers() {
+        return myBrowsers.values();
+    }
+
+    int size() {
+        return myBrowsers.size();
+    }
+
+    @Nullable
+    private Tab getTab(@NotNull Browser browser) {
+        for (Tab tab : myTabPane.getTabs()) {
+            if (tab.getUserData() == browser) return tab;
+        }
+        return null;
+    }
+
+    void close() {
+        List<Browser> browsers = new ArrayList<>(myBrowsers.values());
+        for (Browser browser : browsers) {
+            removeBrowser(browser);
+        }
+        if (myWebViewPool != null) {
+            myWebViewPool.close();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves page resources from memory through the sample: URL scheme, no public directory needed
+ * <p>
+ * URL form is sample://instance/path. Pages set for an instance with {@link #setPage(int, String, byte[])}
+ * take precedence, otherwise the path is loaded from the class path once and cached. Cached content
+ * is never modified, only read through streams. Only page resource types are served from the class path.
+ */
+class ClasspathResourceServer {
+    static final String PROTOCOL = "sample";
+    private static final byte[] NOT_FOUND = new byte[0];
+
+    private static final ClasspathResourceServer INSTANCE = new ClasspathResourceServer();
+    private static boolean ourRegistered = false;
+
+    private final ConcurrentHashMap<String, byte[]> myResources = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, byte[]> myPages = new ConcurrentHashMap<>();
+
+    static ClasspathResourceServer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register sample: protocol, can only be done once per JVM and must be done before any other
+     * code sets the URL stream handler factory
+     */
+    static synchronized void register() {
+        if (!ourRegistered) {
+            URL.setURLStreamHandlerFactory(protocol -> PROTOCOL.equals(protocol) ? new Handler() : null);
+            ourRegistered = true;
+        }
+    }
+
+    static synchronized boolean isRegistered() {
+        return ourRegistered;
+    }
+
+    @NotNull
+    static String getURL(int instance, @NotNull String path) {
+        return PROTOCOL + "://" + instance + (path.startsWith("/") ? path : "/" + path);
+    }
+
+    void setPage(int instance, @NotNull String path, @NotNull byte[] content) {
+        myPages.put(getURL(instance, path), content);
+    }
+
+    void removePages(int instance) {
+        String prefix = getURL(instance, "/");
+        myPages.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * @param url url to get
+     * @return content, must not be modified, or null if not found
+     */
+    @Nullable
+    byte[] getContent(@NotNull URL url) {
+        String path = url.getPath();
+        byte[] page = myPages.get(getURL(parseInstance(url), path));
+        if (page != null) return page;
+
+        if (getContentType(path) == null) return null;
+
+        byte[] resource = myResources.computeIfAbsent(path, this::loadResource);
+        return resource == NOT_FOUND ? null : resource;
+    }
+
+    private static int parseInstance(@NotNull URL url) {
+        try {
+            return Integer.parseInt(url.getHost());
+        } catch (NumberFormatException ignored) {
+            return 0;
+        }
+    }
+
+    @NotNull
+    private byte[] loadResource(@NotNull String path) {
+        try (InputStream inputStream = ClasspathResourceServer.class.getResourceAsStream(path)) {
+            if (inputStream == null) return NOT_FOUND;
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16384];
+            int n;
+            while (-1 != (n = inputStream.read(buffer))) {
+                outputStream.write(buffer, 0, n);
+            }
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            return NOT_FOUND;
+        }
+    }
+
+    @Nullable
+    static String getContentType(@NotNull String path) {
+        int pos = path.lastIndexOf('.');
+        String extension = pos < 0 ? "" : path.substring(pos + 1);
+        switch (extension) {
+            case "html":
+                return "text/html; charset=UTF-8";
+            case "css":
+                return "text/css; charset=UTF-8";
+            case "js":
+                return "application/javascript; charset=UTF-8";
+            case "ttf":
+                return "font/ttf";
+            case "png":
+                return "image/png";
+            default:
+                return null;
+        }
+    }
+
+    static class Handler extends URLStreamHandler {
+        @Override
+        protected URLConnection openConnection(URL url) {
+            return new Connection(url);
+        }
+    }
+
+    static class Connection extends URLConnection {
+        private byte[] myContent;
+
+        Connection(URL url) {
+            super(url);
+        }
+
+        @Override
+        public void connect() throws IOException {
+            if (!connected) {
+                myContent = INSTANCE.getContent(url);
+                if (myContent == null) throw new FileNotFoundException(url.toString());
+                connected = true;
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+            return new ByteArrayInputStream(myContent);
+        }
+
+        @Override
+        public String getContentType() {
+            return ClasspathResourceServer.getContentType(url.getPath());
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            try {
+                connect();
+                return myContent.length;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public int getContentLength() {
+            long length = getContentLengthLong();
+            return length > Integer.MAX_VALUE ? -1 : (int) length;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chrome Dev Tools protocol traffic of a browser instance by domain and method: message counts,
+ * bytes in each direction and request to response latency
+ * <p>
+ * Only the message envelope is scanned for id and method, message bodies are not parsed.
+ * Requests from Dev Tools and responses from WebKit are matched by id per connection.
+ */
+final class DevToolsProtocolStats {
+    private static final int ENVELOPE_SCAN = 128;
+
+    static final class MethodStats {
+        final String method;
+        final LongAdder requests = new LongAdder();
+        final LongAdder responses = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder events = new LongAdder();
+        final LongAdder bytesToBrowser = new LongAdder();
+        final LongAdder bytesFromBrowser = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        MethodStats(@NotNull String method) {
+            this.method = method;
+        }
+
+        long getMessages() {
+            return requests.sum() + responses.sum() + events.sum();
+        }
+
+        long getBytes() {
+            return bytesToBrowser.sum() + bytesFromBrowser.sum();
+        }
+    }
+
+    static final class Pending {
+        final MethodStats stats;
+        final long sentNanos;
+
+        Pending(@NotNull MethodStats stats, long sentNanos) {
+            this.stats = stats;
+            this.sentNanos = sentNanos;
+        }
+    }
+
+    private final ConcurrentHashMap<String, MethodStats> myMethods = new ConcurrentHashMap<>();
+    private final LongAdder myUnknown = new LongAdder();
+
+    private MethodStats getMethodStats(@NotNull String method) {
+        return myMethods.computeIfAbsent(method, MethodStats::new);
+    }
+
+    /**
+     * Message from Dev Tools to the WebView
+     *
+     * @param message protocol message
+     * @param pending requests of the connection waiting for a response
+     */
+    void fromDevTools(@NotNull String message, @NotNull Map<Long, Pending> pending) {
+        long now = System.nanoTime();
+        String method = scanString(message, "\"method\":\"");
+        long id = scanId(message);
+
+        if (method == null || id < 0) {
+            // unusual key order, parse the whole request, these are small
+            try {
+                BoxedJsObject json = BoxedJson.boxedFrom(new StringReader(message));
+                method = json.getJsString("method").getString(null);
+                id = json.getJsNumber("id").longValue(-1);
+            } catch (RuntimeException ignored) {
+
+            }
+        }
+
+        if (method == null) {
+            myUnknown.increment();
+            return;
+        }
+
+        MethodStats stats = getMethodStats(method);
+        stats.requests.increment();
+        stats.bytesToBrowser.add(utf8Length(message));
+        if (id >= 0) {
+            pending.put(id, new Pending(stats, now));
+        }
+    }
+
+    /**
+     * Message from the WebView to Dev Tools
+     *
+     * @param message protocol message
+     * @param pending requests of the connection waiting for a response
+     */
+    void fromBrowser(@NotNull String message, @NotNull Map<Long, Pending> pending) {
+        long now = System.nanoTime();
+
+        if (message.startsWith("{\"method\":\"")) {
+            String method = scanString(message, "\"method\":\"");
+            if (method != null) {
+                MethodStats stats = getMethodStats(method);
+                stats.events.increment();
+                stats.bytesFromBrowser.add(utf8Length(message));
+                return;
+            }
+        }
+
+        long id = scanResponseId(message);
+
+        Pending request = id < 0 ? null : pending.remove(id);
+        if (request == null) {
+            myUnknown.increment();
+            return;
+        }
+
+        MethodStats stats = request.stats;
+        stats.responses.increment();
+        stats.bytesFromBrowser.add(utf8Length(message));
+        stats.latency.record(now - request.sentNanos);
+        if (message.startsWith("{\"error\":")) {
+            stats.errors.increment();
+        }
+    }
+
+    @Nullable
+    static String scanString(@NotNull String message, @NotNull String key) {
+        int start = message.indexOf(key);
+        if (start < 0 || start > ENVELOPE_SCAN) return null;
+        start += key.length();
+        int end = message.indexOf('"', start);
+        return end < 0 ? null : message.substring(start, end);
+    }
+
+    static long scanId(@NotNull String message) {
+        int start = message.indexOf("\"id\":");
+        if (start < 0 || start > ENVELOPE_SCAN) return -1;
+        return parseId(message, start + 5);
+    }
+
+    /**
+     * Id of a response, WebKit puts it after the result, a result may have its own id fields
+     * so only the top level id at the end or start of the message is used
+     *
+     * @param message response message
+     * @return id or -1
+     */
+    static long scanResponseId(@NotNull String message) {
+        long id = scanTrailingId(message);
+        if (id < 0 && message.startsWith("{\"id\":")) {
+            id = parseId(message, 6);
+        }
+        return id;
+    }
+
+    static long scanTrailingId(@NotNull String message) {
+        int start = message.lastIndexOf(",\"id\":");
+        if (start < 0 || start < message.length() - 32) return -1;
+
+        // must be the last member of the top level object
+        int end = start + 6;
+        while (end < message.length() && message.charAt(end) >= '0' && message.charAt(end) <= '9') end++;
+        if (!message.substring(end).trim().equals("}")) return -1;
+        return parseId(message, start + 6);
+    }
+
+    private static long parseId(@NotNull String message, int start) {
+        long id = 0;
+        int i = start;
+        int iMax = message.length();
+        while (i < iMax && message.charAt(i) >= '0' && message.charAt(i) <= '9') {
+            id = id * 10 + message.charAt(i) - '0';
+            i++;
+        }
+        return i == start ? -1 : id;
+    }
+
+    static long utf8Length(@NotNull String message) {
+        long length = 0;
+        int iMax = message.length();
+        for (int i = 0; i < iMax; i++) {
+            char c = message.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else length += 3;
+        }
+        return length;
+    }
+
+    boolean isEmpty() {
+        return myMethods.isEmpty();
+    }
+
+    void clear() {
+        myMethods.clear();
+        myUnknown.reset();
+    }
+
+    private static String format(String name, long messages, long requests, long events, long errors, long bytes, @Nullable LatencySnapshot latency) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(name).append(": ").append(messages).append(" msgs");
+        if (requests > 0) sb.append(", ").append(requests).append(" req");
+        if (events > 0) sb.append(", ").append(events).append(" evt");
+        if (errors > 0) sb.append(", ").append(errors).append(" err");
+        sb.append(", ").append(formatBytes(bytes));
+        if (latency != null && latency.getCount() > 0) {
+            sb.append(String.format(", p50 %.1f p99 %.1f max %.1f ms", latency.getP50Millis(), latency.getP99Millis(), latency.getMaxMillis()));
+        }
+        return sb.toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / 1024.0 / 1024.0);
+    }
+
+    /**
+     * @return one line per domain, most bytes first, latency is the slowest method's
+     */
+    @NotNull
+    List<String> getDomainLines() {
+        HashMap<String, long[]> domains = new HashMap<>();
+        HashMap<String, LatencySnapshot> slowest = new HashMap<>();
+
+        for (MethodStats stats : myMethods.values()) {
+            int pos = stats.method.indexOf('.');
+            String domain = pos > 0 ? stats.method.substring(0, pos) : stats.method;
+            long[] totals = domains.computeIfAbsent(domain, key -> new long[5]);
+            totals[0] += stats.getMessages();
+            totals[1] += stats.requests.sum();
+            totals[2] += stats.events.sum();
+            totals[3] += stats.errors.sum();
+            totals[4] += stats.getBytes();
+
+            LatencySnapshot latency = stats.latency.snapshot();
+            LatencySnapshot current = slowest.get(domain);
+            if (latency.getCount() > 0 && (current == null || latency.getP99Millis() > current.getP99Millis())) {
+                slowest.put(domain, latency);
+            }
+        }
+
+        ArrayList<Map.Entry<String, long[]>> entries = new ArrayList<>(domains.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[4]).reversed());
+
+        ArrayList<String> lines = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : entries) {
+            long[] totals = entry.getValue();
+            lines.add(format(entry.getKey(), totals[0], totals[1], totals[2], totals[3], totals[4], slowest.get(entry.getKey())));
+        }
+        return lines;
+    }
+
+    /**
+     * @param maxMethods maximum methods to include
+     * @return one line per method, most bytes first
+     */
+    @NotNull
+    List<String> getMethodLines(int maxMethods) {
+        ArrayList<MethodStats> methods = new ArrayList<>(myMethods.values());
+        methods.sort(Comparator.comparingLong(MethodStats::getBytes).reversed());
+
+        ArrayList<String> lines = new ArrayList<>();
+        for (MethodStats stats : methods) {
+            if (lines.size() >= maxMethods) break;
+            lines.add(format(stats.method, stats.getMessages(), stats.requests.sum(), stats.events.sum(), stats.errors.sum(), stats.getBytes(), stats.latency.snapshot()));
+        }
+        return lines;
+    }
+
+    @NotNull
+    String getSummary() {
+        if (isEmpty()) return "no traffic";
+        List<String> lines = getDomainLines();
+        String summary = String.join("; ", lines);
+        long unknown = myUnknown.sum();
+        return unknown > 0 ? summary + "; unmatched: " + unknown : summary;
+    }
+}
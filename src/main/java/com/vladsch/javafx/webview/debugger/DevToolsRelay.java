@@ -0,0 +1,313 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import javafx.application.Platform;
+import org.java_websocket.WebSocket;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshake;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Web socket relay between Chrome Dev Tools and the debug server, for protocol traffic stats
+ * <p>
+ * Dev Tools connect to the relay on the debug port, the relay connects to the debug server
+ * running on a free local port with the same resource, so instance routing is unchanged. Like the
+ * debug server, one relay per port is shared by all instances debugging on it. Connections can be
+ * recorded to session files for replay.
+ */
+class DevToolsRelay extends org.java_websocket.server.WebSocketServer {
+    private static final HashMap<Integer, DevToolsRelay> ourRelays = new HashMap<>();
+
+    final int myServerPort;
+    private final ConcurrentHashMap<Integer, Instance> myInstances = new ConcurrentHashMap<>();
+    private @Nullable Consumer<Throwable> myOnFailure;
+
+    static class Instance {
+        final DevToolsProtocolStats myProtocolStats;
+        // directory for session recordings, null if not recording
+        volatile @Nullable File myRecordingDir;
+        final @NotNull Consumer<File> myOnRecording;
+
+        Instance(@NotNull DevToolsProtocolStats protocolStats, @Nullable File recordingDir, @NotNull Consumer<File> onRecording) {
+            myProtocolStats = protocolStats;
+            myRecordingDir = recordingDir;
+            myOnRecording = onRecording;
+        }
+    }
+
+    /**
+     * Connection to the debug server for one Dev Tools connection
+     */
+    class Upstream extends WebSocketClient {
+        final WebSocket myDevTools;
+        final @Nullable DevToolsProtocolStats myProtocolStats;
+        final @Nullable DevToolsSessionRecorder myRecorder;
+        final ConcurrentHashMap<Long, DevToolsProtocolStats.Pending> myPending = new ConcurrentHashMap<>();
+        // messages from Dev Tools before the debug server connection is open
+        private @Nullable ArrayList<String> myQueued = new ArrayList<>();
+
+        Upstream(@NotNull URI uri, @NotNull WebSocket devTools, @Nullable DevToolsProtocolStats protocolStats, @Nullable DevToolsSessionRecorder recorder) {
+            super(uri);
+            myDevTools = devTools;
+            myProtocolStats = protocolStats;
+            myRecorder = recorder;
+        }
+
+        void toBrowser(@NotNull String message) {
+            if (myProtocolStats != null) myProtocolStats.fromDevTools(message, myPending);
+            if (myRecorder != null) myRecorder.record(DevToolsSessionRecorder.TO_BROWSER, message);
+
+            synchronized (this) {
+                if (myQueued != null) {
+                    myQueued.add(message);
+                } else {
+                    send(message);
+                }
+            }
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshakedata) {
+            synchronized (this) {
+                if (myQueued != null) {
+                    for (String message : myQueued) {
+                        send(message);
+                    }
+                    myQueued = null;
+                }
+            }
+        }
+
+        @Override
+        public void onMessage(String message) {
+            if (myProtocolStats != null) myProtocolStats.fromBrowser(message, myPending);
+            if (myRecorder != null) myRecorder.record(DevToolsSessionRecorder.FROM_BROWSER, message);
+            if (myDevTools.isOpen()) {
+                myDevTools.send(message);
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            if (myRecorder != null) myRecorder.close();
+            if (myDevTools.isOpen()) {
+                myDevTools.close(code, reason);
+            }
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            LogHandler.LOG_HANDLER.error("Dev Tools relay debug server connection error", ex);
+        }
+    }
+
+    private DevToolsRelay(int port, int serverPort) {
+        super(new InetSocketAddress("localhost", port));
+        myServerPort = serverPort;
+        setReuseAddr(true);
+    }
+
+    /**
+     * Start relay on port or add instance to running one
+     *
+     * @param port      debug port Dev Tools connect to
+     * @param instance  browser instance
+     * @param stats        protocol stats for the instance
+     * @param recordingDir directory for Dev Tools session recordings or null to not record
+     * @param onRecording  called with session file when a recording starts, on a relay thread
+     * @param onFailure    called on FX thread if relay fails to start
+     * @return port to start the debug server on
+     * @throws IOException if no free port for the debug server
+     */
+    static int acquire(int port, int instance, @NotNull DevToolsProtocolStats stats, @Nullable File recordingDir, @NotNull Consumer<File> onRecording, @NotNull Consumer<Throwable> onFailure) throws IOException {
+        synchronized (ourRelays) {
+            DevToolsRelay relay = ourRelays.get(port);
+            if (relay == null) {
+                int serverPort;
+                try (ServerSocket socket = new ServerSocket(0)) {
+                    serverPort = socket.getLocalPort();
+                }
+
+                relay = new DevToolsRelay(port, serverPort);
+                relay.myOnFailure = onFailure;
+                ourRelays.put(port, relay);
+                relay.start();
+            }
+
+            relay.myInstances.put(instance, new Instance(stats, recordingDir, onRecording));
+            return relay.myServerPort;
+        }
+    }
+
+    /**
+     * Record Dev Tools connections made from now on
+     *
+     * @param port         debug port
+     * @param instance     browser instance
+     * @param recordingDir directory for session recordings or null to stop recording new connections
+     */
+    static void setRecording(int port, int instance, @Nullable File recordingDir) {
+        synchronized (ourRelays) {
+            DevToolsRelay relay = ourRelays.get(port);
+            Instance relayInstance = relay == null ? null : relay.myInstances.get(instance);
+            if (relayInstance != null) {
+                relayInstance.myRecordingDir = recordingDir;
+            }
+        }
+    }
+
+    /**
+     * Remove instance from relay, relay is stopped when no instances use it
+     *
+     * @param port     debug port
+     * @param instance browser instance
+     */
+    static void release(int port, int instance) {
+        DevToolsRelay relay;
+        synchronized (ourRelays) {
+            relay = ourRelays.get(port);
+            if (relay == null) return;
+
+            relay.myInstances.remove(instance);
+            if (!relay.myInstances.isEmpty()) return;
+            ourRelays.remove(port);
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                relay.stop(1000);
+            } catch (InterruptedException ignored) {
+
+            }
+        }, "DevToolsRelay stop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param debugUrl debug URL of the debug server
+     * @param port     debug port of the relay
+     * @return debug URL for Dev Tools to use
+     */
+    @NotNull
+    static String getRelayURL(@NotNull String debugUrl, int port) {
+        synchronized (ourRelays) {
+            DevToolsRelay relay = ourRelays.get(port);
+            return relay == null ? debugUrl : debugUrl.replace("localhost:" + relay.myServerPort, "localhost:" + port);
+        }
+    }
+
+    static int getInstance(@Nullable String resourceDescriptor) {
+        // debug server resources are / for instance 0 and /?N for others
+        if (resourceDescriptor != null && resourceDescriptor.startsWith("/?")) {
+            try {
+                return Integer.parseInt(resourceDescriptor.substring(2));
+            } catch (NumberFormatException ignored) {
+
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        String resource = handshake.getResourceDescriptor();
+        int instance = getInstance(resource);
+        Instance relayInstance = myInstances.get(instance);
+        DevToolsSessionRecorder recorder = null;
+
+        File recordingDir = relayInstance == null ? null : relayInstance.myRecordingDir;
+        if (recordingDir != null) {
+            File file = new File(recordingDir, "devtools-" + instance + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".session.gz");
+            try {
+                if (!recordingDir.isDirectory() && !recordingDir.mkdirs()) {
+                    throw new IOException("cannot create " + recordingDir);
+                }
+                recorder = new DevToolsSessionRecorder(file, resource);
+                relayInstance.myOnRecording.accept(file);
+            } catch (IOException e) {
+                LogHandler.LOG_HANDLER.error("Dev Tools session recording not started", e);
+            }
+        }
+
+        Upstream upstream = new Upstream(URI.create("ws://localhost:" + myServerPort + resource), conn, relayInstance == null ? null : relayInstance.myProtocolStats, recorder);
+        conn.setAttachment(upstream);
+        upstream.connect();
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        Upstream upstream = conn.getAttachment();
+        if (upstream != null) {
+            upstream.toBrowser(message);
+        }
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        Upstream upstream = conn.getAttachment();
+        if (upstream != null) {
+            upstream.close();
+        }
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        if (conn == null) {
+            // relay could not start
+            Consumer<Throwable> onFailure = myOnFailure;
+            myOnFailure = null;
+            synchronized (ourRelays) {
+                ourRelays.remove(getPort(), this);
+            }
+            if (onFailure != null) {
+                Platform.runLater(() -> onFailure.accept(ex));
+            }
+        } else {
+            LogHandler.LOG_HANDLER.error("Dev Tools relay connection error", ex);
+        }
+    }
+
+    @Override
+    public void onStart() {
+        myOnFailure = null;
+    }
+}
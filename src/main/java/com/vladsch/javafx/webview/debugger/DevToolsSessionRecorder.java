@@ -0,0 +1,135 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records Dev Tools protocol messages of one connection to a gzipped session file
+ * <p>
+ * First line is the header with the connection resource, each following line is one message:
+ * microseconds since connection, tab, &gt; for Dev Tools to WebView or &lt; for WebView to Dev
+ * Tools, tab, message JSON.
+ */
+final class DevToolsSessionRecorder {
+    static final String HEADER = "# devtools-session 1 ";
+    static final char TO_BROWSER = '>';
+    static final char FROM_BROWSER = '<';
+
+    static final class Entry {
+        final long micros;
+        final char direction;
+        final String message;
+
+        Entry(long micros, char direction, @NotNull String message) {
+            this.micros = micros;
+            this.direction = direction;
+            this.message = message;
+        }
+    }
+
+    final File myFile;
+    private final long myStartNanos = System.nanoTime();
+    private Writer myWriter;
+    private long myMessages;
+
+    DevToolsSessionRecorder(@NotNull File file, @NotNull String resource) throws IOException {
+        myFile = file;
+        myWriter = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8));
+        myWriter.write(HEADER + resource + "\n");
+    }
+
+    synchronized void record(char direction, @NotNull String message) {
+        if (myWriter == null) return;
+
+        try {
+            myWriter.write(Long.toString((System.nanoTime() - myStartNanos) / 1000));
+            myWriter.write('\t');
+            myWriter.write(direction);
+            myWriter.write('\t');
+            // raw line breaks can only be JSON white space
+            myWriter.write(message.indexOf('\n') >= 0 ? message.replace('\n', ' ') : message);
+            myWriter.write('\n');
+            myMessages++;
+        } catch (IOException e) {
+            LogHandler.LOG_HANDLER.error("Dev Tools session recording failed: " + myFile, e);
+            close();
+        }
+    }
+
+    synchronized long getMessageCount() {
+        return myMessages;
+    }
+
+    synchronized void close() {
+        if (myWriter != null) {
+            try {
+                myWriter.close();
+            } catch (IOException e) {
+                LogHandler.LOG_HANDLER.error("Dev Tools session recording close failed: " + myFile, e);
+            }
+            myWriter = null;
+        }
+    }
+
+    /**
+     * @param file session file
+     * @return recorded messages in order
+     * @throws IOException if file cannot be read or is not a session file
+     */
+    @NotNull
+    static List<Entry> read(@NotNull File file) throws IOException {
+        ArrayList<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(HEADER)) {
+                throw new IOException("not a Dev Tools session file: " + file);
+            }
+
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0 || tab + 2 >= line.length() || line.charAt(tab + 2) != '\t') continue;
+                entries.add(new Entry(Long.parseLong(line.substring(0, tab)), line.charAt(tab + 1), line.substring(tab + 3)));
+            }
+        }
+        return entries;
+    }
+}
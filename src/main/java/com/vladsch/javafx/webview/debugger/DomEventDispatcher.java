@@ -0,0 +1,178 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsArray;
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJson;
+import javafx.scene.web.WebEngine;
+import netscape.javascript.JSObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * DOM event dispatch with one listener per event type in the page
+ * <p>
+ * Handlers are registered by event type and CSS selector with the event fields they need. Routes
+ * are sent to the page on each load, the page matches events to routes and sends only the
+ * requested fields, one upcall per event or, for coalesced routes, one per animation frame with
+ * the last event of each route. Exposed to page scripts as window.markdownNavigatorEvents, must be
+ * public for JavaScript to call it.
+ * <p>
+ * Available fields: nodeName, id, className, text of the matched element, clientX, clientY,
+ * pageX, pageY, scrollX, scrollY, key, button, shiftKey, altKey, ctrlKey, metaKey,
+ * defaultPrevented and handledBy, the name passed to markdownNavigator.setEventHandledBy()
+ * by a page script handling the event.
+ */
+public class DomEventDispatcher {
+    static final String MEMBER_NAME = "markdownNavigatorEvents";
+
+    static class Route {
+        final int myId;
+        final String myType;
+        final @Nullable String mySelector;
+        final boolean myCoalesce;
+        final String[] myFields;
+        final Consumer<BoxedJsObject> myHandler;
+        final String myHandlerName;
+
+        Route(int id, String type, @Nullable String selector, boolean coalesce, String[] fields, Consumer<BoxedJsObject> handler) {
+            myId = id;
+            myType = type;
+            mySelector = selector;
+            myCoalesce = coalesce;
+            myFields = fields;
+            myHandler = handler;
+            myHandlerName = "DOM " + type + (selector == null ? "" : " " + selector);
+        }
+    }
+
+    private final ArrayList<Route> myRoutes = new ArrayList<>();
+
+    // stats, updated on FX thread
+    private volatile long myEvents;
+    private volatile long myDelivered;
+    private volatile long myCrossings;
+
+    /**
+     * Add handler, takes effect on next page load
+     *
+     * @param type     event type
+     * @param selector CSS selector the target or its ancestor must match, the matched element provides element fields, null for no element
+     * @param coalesce true to only get last event per animation frame, for high frequency events like mousemove and scroll
+     * @param handler  handler, called on the FX thread with requested fields
+     * @param fields   event fields needed by handler
+     */
+    void on(@NotNull String type, @Nullable String selector, boolean coalesce, @NotNull Consumer<BoxedJsObject> handler, String... fields) {
+        myRoutes.add(new Route(myRoutes.size(), type, selector, coalesce, fields, handler));
+    }
+
+    /**
+     * Install routes in the loaded page, call after JSBridge is connected
+     *
+     * @param engine web engine with loaded page
+     * @return true if page supports routed events, false if page does not have markdown-navigator.js
+     */
+    boolean install(@NotNull WebEngine engine) {
+        Object supported = engine.executeScript("typeof markdownNavigator === 'object' && markdownNavigator !== null && typeof markdownNavigator.setEventRoutes === 'function'");
+        if (!Boolean.TRUE.equals(supported)) return false;
+
+        JSObject window = (JSObject) engine.executeScript("window");
+        window.setMember(MEMBER_NAME, this);
+        engine.executeScript("markdownNavigator.setEventRoutes(" + getRoutesJson() + ");");
+        return true;
+    }
+
+    @NotNull
+    String getRoutesJson() {
+        StringBuilder sb = new StringBuilder().append('[');
+        for (Route route : myRoutes) {
+            if (route.myId > 0) sb.append(',');
+            sb.append("{\"id\":").append(route.myId)
+                    .append(",\"type\":").append(BoxedJson.boxedOf(route.myType))
+                    .append(",\"selector\":").append(route.mySelector == null ? "null" : BoxedJson.boxedOf(route.mySelector).toString())
+                    .append(",\"coalesce\":").append(route.myCoalesce)
+                    .append(",\"fields\":[");
+            for (int i = 0; i < route.myFields.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(BoxedJson.boxedOf(route.myFields[i]));
+            }
+            sb.append("]}");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * @param batch JSON array of [routeId, fields, eventCount] entries
+     */
+    public void dispatch(String batch) {
+        myCrossings++;
+
+        BoxedJsArray entries;
+        try {
+            entries = BoxedJson.boxedFrom(new StringReader("{\"e\":" + batch + "}")).getJsArray("e");
+        } catch (RuntimeException e) {
+            LogHandler.LOG_HANDLER.error("invalid event batch", e);
+            return;
+        }
+
+        int iMax = entries.size();
+        for (int i = 0; i < iMax; i++) {
+            BoxedJsArray entry = entries.getJsArray(i);
+            int id = entry.getJsNumber(0).intValue(-1);
+            myEvents += entry.getJsNumber(2).intValue(1);
+
+            if (id >= 0 && id < myRoutes.size()) {
+                myDelivered++;
+                Route route = myRoutes.get(id);
+                String previous = FxStallWatchdog.enter(route.myHandlerName);
+                try {
+                    route.myHandler.accept(entry.getJsObject(1));
+                } catch (RuntimeException e) {
+                    LogHandler.LOG_HANDLER.error("event handler exception", e);
+                } finally {
+                    FxStallWatchdog.exit(previous);
+                }
+            }
+        }
+    }
+
+    long getEventCount() {
+        return myEvents;
+    }
+
+    long getUpcallCount() {
+        return myCrossings;
+    }
+
+    String getStatsSummary() {
+        return "events: " + myEvents + ", delivered: " + myDelivered + ", upcalls: " + myCrossings;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.scene.control.Menu;
+import javafx.scene.control.MenuItem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watchdog for stalls of the FX application thread
+ * <p>
+ * A background thread posts a probe with Platform.runLater() every probe period and measures its
+ * scheduling latency. When a probe is not run within the threshold the stack of the FX thread is
+ * captured with the name of the handler it is running. Handlers are named by wrapping them with
+ * run(), wrap() or enter()/exit().
+ * <p>
+ * Gaps between pulses are sampled by an animation timer in short windows, every PULSE_SAMPLE_PERIOD
+ * and after a stall, since a running timer makes JavaFX pulse every frame even when idle.
+ * <p>
+ * Stall reports are logged as warnings when detected and kept in a ring of recent reports with
+ * their final duration.
+ */
+class FxStallWatchdog {
+    static final int STACK_DEPTH = 24;
+    static final long PULSE_SAMPLE_PERIOD = TimeUnit.SECONDS.toNanos(10);
+    static final long PULSE_SAMPLE_WINDOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static FxStallWatchdog ourInstance = null;
+
+    // handler running on the FX thread, only written on the FX thread
+    private static volatile @Nullable String ourHandler = null;
+
+    static class StallReport {
+        final long time;
+        final @Nullable String handler;
+        final @NotNull StackTraceElement[] stack;
+        volatile long stallMillis;
+        volatile boolean ended;
+
+        StallReport(long time, @Nullable String handler, @NotNull StackTraceElement[] stack, long stallMillis) {
+            this.time = time;
+            this.handler = handler;
+            this.stack = stack;
+            this.stallMillis = stallMillis;
+        }
+
+        @NotNull
+        String getTitle() {
+            return "FX thread " + (ended ? "stalled " : "blocked for ") + stallMillis + "ms"
+                    + " at " + new SimpleDateFormat("HH:mm:ss.SSS").format(new Date(time))
+                    + (handler == null ? "" : " in " + handler);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(getTitle());
+            for (StackTraceElement element : stack) {
+                sb.append("\n\tat ").append(element);
+            }
+            return sb.toString();
+        }
+    }
+
+    private final long myThresholdNanos;
+    private final long myProbeMillis;
+    private final int myHistorySize;
+    private final ScheduledExecutorService myProbe;
+    private final AnimationTimer myPulseTimer;
+    private final LatencyHistogram myRunLaterLatency = new LatencyHistogram();
+    private final LatencyHistogram myPulseGaps = new LatencyHistogram();
+    private final ArrayDeque<StallReport> myReports = new ArrayDeque<>();
+    private final AtomicLong myStalls = new AtomicLong();
+    private final AtomicLong myPulseStalls = new AtomicLong();
+    private final AtomicBoolean myPulseSampling = new AtomicBoolean();
+
+    private volatile @Nullable Thread myFxThread = null;
+    // nanoTime when outstanding probe was posted, 0 if none
+    private volatile long myProbePosted = 0;
+    private volatile long myProbeLatency = 0;
+    // owned by probe thread
+    private @Nullable StallReport myStall = null;
+    private long myNextPulseSample = 0;
+    // owned by FX thread
+    private long myLastPulse = 0;
+    private long myPulseSampleStart = 0;
+
+    /**
+     * @param thresholdMillis stall threshold
+     * @param probeMillis     probe period
+     * @param historySize     stall reports to keep
+     */
+    FxStallWatchdog(long thresholdMillis, long probeMillis, int historySize) {
+        myThresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        myProbeMillis = probeMillis;
+        myHistorySize = historySize;
+        myNextPulseSample = System.nanoTime();
+        myProbe = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "FxStallWatchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        myPulseTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (myLastPulse != 0) {
+                    long gap = now - myLastPulse;
+                    myPulseGaps.record(gap);
+                    if (gap >= myThresholdNanos) myPulseStalls.incrementAndGet();
+                } else {
+                    myPulseSampleStart = now;
+                }
+                myLastPulse = now;
+
+                if (now - myPulseSampleStart >= PULSE_SAMPLE_WINDOW) {
+                    stop();
+                    myPulseSampling.set(false);
+                }
+            }
+        };
+    }
+
+    /**
+     * Start the watchdog, must be called on the FX thread
+     *
+     * @param thresholdMillis stall threshold
+     * @param probeMillis     probe period
+     * @param historySize     stall reports to keep
+     */
+    static synchronized void start(long thresholdMillis, long probeMillis, int historySize) {
+        if (ourInstance != null) return;
+
+        ourInstance = new FxStallWatchdog(thresholdMillis, probeMillis, historySize);
+        ourInstance.myFxThread = Thread.currentThread();
+        ourInstance.myProbe.scheduleWithFixedDelay(ourInstance::probe, probeMillis, probeMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Nullable
+    static synchronized FxStallWatchdog getInstance() {
+        return ourInstance;
+    }
+
+    static synchronized void stop() {
+        if (ourInstance != null) {
+            ourInstance.myPulseTimer.stop();
+            ourInstance.myProbe.shutdownNow();
+            ourInstance = null;
+        }
+    }
+
+    /**
+     * Name the handler running on the FX thread until exit()
+     *
+     * @param handler handler name
+     * @return previous handler to pass to exit()
+     */
+    @Nullable
+    static String enter(@NotNull String handler) {
+        String previous = ourHandler;
+        ourHandler = handler;
+        return previous;
+    }
+
+    static void exit(@Nullable String previous) {
+        ourHandler = previous;
+    }
+
+    static void run(@NotNull String handler, @NotNull Runnable runnable) {
+        String previous = enter(handler);
+        try {
+            runnable.run();
+        } finally {
+            exit(previous);
+        }
+    }
+
+    @NotNull
+    static <T> ChangeListener<T> wrap(@NotNull String handler, @NotNull ChangeListener<T> listener) {
+        return (observable, oldValue, newValue) -> run(handler, () -> listener.changed(observable, oldValue, newValue));
+    }
+
+    /**
+     * Name action handlers of menu items and their sub menu items by the item's text
+     *
+     * @param items menu items
+     */
+    static void wrapActions(@NotNull List<MenuItem> items) {
+        for (MenuItem item : items) {
+            if (item instanceof Menu) {
+                wrapActions(((Menu) item).getItems());
+            }
+
+            EventHandler<ActionEvent> onAction = item.getOnAction();
+            if (onAction != null) {
+                item.setOnAction(e -> run("menu: " + item.getText(), () -> onAction.handle(e)));
+            }
+        }
+    }
+
+    private void samplePulses() {
+        if (myPulseSampling.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                myLastPulse = 0;
+                myPulseTimer.start();
+            });
+        }
+    }
+
+    private void probe() {
+        long now = System.nanoTime();
+        long posted = myProbePosted;
+
+        if (now - myNextPulseSample >= 0) {
+            myNextPulseSample = now + PULSE_SAMPLE_PERIOD;
+            samplePulses();
+        }
+
+        if (posted != 0) {
+            if (myStall == null && now - posted >= myThresholdNanos) {
+                stallDetected(now - posted);
+            }
+            return;
+        }
+
+        if (myStall != null) {
+            stallEnded(myProbeLatency);
+        }
+
+        myProbePosted = now;
+        Platform.runLater(() -> {
+            myProbeLatency = System.nanoTime() - now;
+            myRunLaterLatency.record(myProbeLatency);
+            myProbePosted = 0;
+        });
+    }
+
+    private void stallDetected(long stallNanos) {
+        Thread fxThread = myFxThread;
+        String handler = ourHandler;
+        StackTraceElement[] stack = fxThread == null ? new StackTraceElement[0] : fxThread.getStackTrace();
+        if (stack.length > STACK_DEPTH) {
+            StackTraceElement[] trimmed = new StackTraceElement[STACK_DEPTH];
+            System.arraycopy(stack, 0, trimmed, 0, STACK_DEPTH);
+            stack = trimmed;
+        }
+
+        myStall = new StallReport(System.currentTimeMillis(), handler, stack, TimeUnit.NANOSECONDS.toMillis(stallNanos));
+        myStalls.incrementAndGet();
+
+        synchronized (myReports) {
+            myReports.addLast(myStall);
+            if (myReports.size() > myHistorySize) myReports.removeFirst();
+        }
+
+        LogHandler.LOG_HANDLER.warn(myStall.toString());
+
+        // pulses right after the stall
+        samplePulses();
+    }
+
+    private void stallEnded(long stallNanos) {
+        StallReport stall = myStall;
+        myStall = null;
+        if (stall != null) {
+            stall.stallMillis = TimeUnit.NANOSECONDS.toMillis(stallNanos);
+            stall.ended = true;
+            LogHandler.LOG_HANDLER.warn(stall.getTitle());
+        }
+    }
+
+    /**
+     * @return recent stall reports, oldest first
+     */
+    @NotNull
+    List<StallReport> getReports() {
+        synchronized (myReports) {
+            return new ArrayList<>(myReports);
+        }
+    }
+
+    long getStallCount() {
+        return myStalls.get();
+    }
+
+    @NotNull
+    LatencySnapshot getRunLaterLatency() {
+        return myRunLaterLatency.snapshot();
+    }
+
+    @NotNull
+    LatencySnapshot getPulseGaps() {
+        return myPulseGaps.snapshot();
+    }
+
+    String getStatsSummary() {
+        return "stalls: " + myStalls.get() + ", pulse gaps over threshold: " + myPulseStalls.get()
+                + ", runLater latency: " + myRunLaterLatency.snapshot() + ", pulse gaps: " + myPulseGaps.snapshot();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Single pass HTML instrumenter, copies reader to writer inserting text after the first
+ * &lt;head&gt; and the first &lt;body&gt; tag
+ * <p>
+ * Only the copy buffer is held in memory, input size does not matter. When the body insert
+ * depends on the state keys the page declares with
+ * &lt;meta name="markdown-navigator-state" content="key1 key2"&gt; the text before the body tag
+ * is kept, up to MAX_HEAD_SIZE, to find the declaration.
+ */
+class HtmlInstrumenter {
+    static final String HEAD_TAG = "<head>";
+    static final String BODY_TAG = "<body>";
+    static final int MAX_HEAD_SIZE = 65536;
+    static final Pattern STATE_KEYS_META = Pattern.compile("<meta\\s+name=\"markdown-navigator-state\"\\s+content=\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
+
+    private final @Nullable String myHeadInsert;
+    private final @Nullable Function<String[], String> myBodyInsert;
+    private final boolean myNeedsStateKeys;
+    private @Nullable String[] myDeclaredStateKeys;
+
+    /**
+     * @param headInsert text to insert after head tag or null
+     * @param bodyInsert text to insert after body tag or null
+     */
+    HtmlInstrumenter(@Nullable String headInsert, @Nullable String bodyInsert) {
+        myHeadInsert = headInsert;
+        myBodyInsert = bodyInsert == null ? null : keys -> bodyInsert;
+        myNeedsStateKeys = false;
+    }
+
+    /**
+     * @param headInsert text to insert after head tag or null
+     * @param bodyInsert computes text to insert after body tag from the state keys declared by the page,
+     *                   null if the page has no declaration, function result null for no insert
+     */
+    HtmlInstrumenter(@Nullable String headInsert, @NotNull Function<String[], String> bodyInsert) {
+        myHeadInsert = headInsert;
+        myBodyInsert = bodyInsert;
+        myNeedsStateKeys = true;
+    }
+
+    /**
+     * @return state keys declared by the last instrumented page or null if it had no declaration
+     */
+    @Nullable
+    String[] getDeclaredStateKeys() {
+        return myDeclaredStateKeys;
+    }
+
+    @Nullable
+    static String[] parseStateKeys(@NotNull CharSequence head) {
+        Matcher matcher = STATE_KEYS_META.matcher(head);
+        if (!matcher.find()) return null;
+        String content = matcher.group(1).trim();
+        return content.isEmpty() ? new String[0] : content.split("\\s+");
+    }
+
+    /**
+     * Read only the text before the body tag, up to MAX_HEAD_SIZE, for the state key declaration
+     *
+     * @return declared state keys or null if the page has no declaration
+     */
+    @Nullable
+    static String[] readStateKeys(@NotNull Reader reader) throws IOException {
+        char[] buffer = new char[8192];
+        StringBuilder head = new StringBuilder();
+        int n;
+
+        while (head.length() < MAX_HEAD_SIZE && -1 != (n = reader.read(buffer, 0, Math.min(buffer.length, MAX_HEAD_SIZE - head.length())))) {
+            int from = Math.max(0, head.length() - BODY_TAG.length());
+            head.append(buffer, 0, n);
+            int body = head.indexOf(BODY_TAG, from);
+            if (body >= 0) {
+                head.setLength(body);
+                break;
+            }
+        }
+        return parseStateKeys(head);
+    }
+
+    void instrument(@NotNull Reader reader, @NotNull Writer writer) throws IOException {
+        char[] buffer = new char[8192];
+        int headMatch = myHeadInsert == null ? -1 : 0;
+        int bodyMatch = myBodyInsert == null ? -1 : 0;
+        StringBuilder head = myNeedsStateKeys ? new StringBuilder() : null;
+        int n;
+
+        myDeclaredStateKeys = null;
+
+        while (-1 != (n = reader.read(buffer))) {
+            int written = 0;
+
+            if (headMatch >= 0 || bodyMatch >= 0) {
+                for (int i = 0; i < n; i++) {
+                    char c = buffer[i];
+
+                    if (headMatch >= 0) {
+                        headMatch = advance(HEAD_TAG, headMatch, c);
+                        if (headMatch == HEAD_TAG.length()) {
+                            writer.write(buffer, written, i + 1 - written);
+                            writer.write(myHeadInsert);
+                            written = i + 1;
+                            headMatch = -1;
+                        }
+                    }
+
+                    if (bodyMatch >= 0) {
+                        bodyMatch = advance(BODY_TAG, bodyMatch, c);
+                        if (bodyMatch == BODY_TAG.length()) {
+                            writer.write(buffer, written, i + 1 - written);
+                            if (head != null) {
+                                head.append(buffer, 0, i + 1);
+                                myDeclaredStateKeys = parseStateKeys(head);
+                                head = null;
+                            }
+                            String bodyInsert = myBodyInsert.apply(myDeclaredStateKeys);
+                            if (bodyInsert != null) writer.write(bodyInsert);
+                            written = i + 1;
+                            bodyMatch = -1;
+                        }
+                    }
+                }
+            }
+
+            if (head != null) {
+                if (head.length() + n <= MAX_HEAD_SIZE) {
+                    head.append(buffer, 0, n);
+                } else {
+                    // keep what we have, declaration is expected near the top
+                    myDeclaredStateKeys = parseStateKeys(head);
+                    head = null;
+                }
+            }
+
+            writer.write(buffer, written, n - written);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Advance tag match, tags start with &lt; and have no other &lt; so a mismatch
+     * restarts the match at 0 or 1
+     */
+    private static int advance(String tag, int matched, char c) {
+        if (tag.charAt(matched) == c) return matched + 1;
+        return c == tag.charAt(0) ? 1 : 0;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import javafx.application.Platform;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs blocking file I/O for the sample on one background thread so the FX thread never waits on disk
+ * <p>
+ * Tasks run in submission order. Keyed tasks are superseded by a later task with the same key:
+ * a superseded task which has not started is skipped and the result of one which already ran is
+ * not delivered, so the FX thread only acts on the latest request, for example only the last of
+ * several quick reloads loads its page. Results and failures are delivered on the FX thread.
+ */
+class IoExecutor {
+    private static IoExecutor ourInstance = null;
+
+    private final ExecutorService myExecutor;
+    private final ConcurrentHashMap<String, AtomicLong> myGenerations = new ConcurrentHashMap<>();
+
+    // stats
+    private final AtomicLong mySubmitted = new AtomicLong();
+    private final AtomicLong mySuperseded = new AtomicLong();
+    private final AtomicLong myFailed = new AtomicLong();
+
+    IoExecutor(@NotNull String threadName) {
+        myExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @NotNull
+    static synchronized IoExecutor getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new IoExecutor("IoExecutor");
+        }
+        return ourInstance;
+    }
+
+    /**
+     * Run task in order with other tasks, failures are only counted
+     *
+     * @param task task
+     */
+    void execute(@NotNull Runnable task) {
+        mySubmitted.incrementAndGet();
+        try {
+            myExecutor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    myFailed.incrementAndGet();
+                    e.printStackTrace();
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // closed, exit path
+        }
+    }
+
+    /**
+     * Run task, superseding any previous task with the same key
+     *
+     * @param key       key of tasks which supersede each other
+     * @param task      task to run on I/O thread
+     * @param onResult  called on FX thread with result if not superseded
+     * @param onFailure called on FX thread with exception if not superseded
+     * @param <T>       result type
+     */
+    <T> void submit(@NotNull String key, @NotNull Callable<T> task, @Nullable Consumer<T> onResult, @NotNull Consumer<Throwable> onFailure) {
+        AtomicLong generation = myGenerations.computeIfAbsent(key, k -> new AtomicLong());
+        long submitted = generation.incrementAndGet();
+
+        execute(() -> {
+            if (generation.get() != submitted) {
+                mySuperseded.incrementAndGet();
+                return;
+            }
+
+            T result;
+            try {
+                result = task.call();
+            } catch (Throwable e) {
+                myFailed.incrementAndGet();
+                Platform.runLater(() -> {
+                    if (generation.get() == submitted) onFailure.accept(e);
+                });
+                return;
+            }
+
+            Platform.runLater(() -> {
+                if (generation.get() != submitted) {
+                    mySuperseded.incrementAndGet();
+                } else if (onResult != null) {
+                    onResult.accept(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Supersede pending tasks for key without submitting another one
+     *
+     * @param key key
+     */
+    void cancel(@NotNull String key) {
+        AtomicLong generation = myGenerations.get(key);
+        if (generation != null) generation.incrementAndGet();
+    }
+
+    /**
+     * Finish submitted tasks and stop the I/O thread
+     *
+     * @param timeoutMillis maximum time to wait for tasks
+     */
+    void close(long timeoutMillis) {
+        myExecutor.shutdown();
+        try {
+            myExecutor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    String getStatsSummary() {
+        return "tasks: " + mySubmitted.get() + ", superseded: " + mySuperseded.get() + ", failed: " + myFailed.get();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * State provider which wants to know when a state key is changed, so it can persist it
+ */
+interface JournaledScriptStateProvider extends JfxScriptStateProvider {
+    void stateChanged(@NotNull String name);
+
+    /**
+     * Get serialized value of a state key, providers cache this and only serialize again when the key changed
+     *
+     * @param name state key
+     * @return JSON text of value or null if no such key
+     */
+    @Nullable
+    default String getSerializedState(@NotNull String name) {
+        BoxedJsObject state = getState();
+        return state.containsKey(name) ? state.get(name).toString() : null;
+    }
+
+    /**
+     * Put a value and notify provider if it is journaled
+     *
+     * @param provider state provider
+     * @param name     state key
+     * @param value    value
+     */
+    static void putState(@NotNull JfxScriptStateProvider provider, @NotNull String name, float value) {
+        BoxedJsObject state = provider.getState();
+        state.put(name, value);
+        if (provider instanceof JournaledScriptStateProvider) {
+            ((JournaledScriptStateProvider) provider).stateChanged(name);
+        }
+    }
+
+    static void putState(@NotNull JfxScriptStateProvider provider, @NotNull String name, int value) {
+        BoxedJsObject state = provider.getState();
+        state.put(name, value);
+        if (provider instanceof JournaledScriptStateProvider) {
+            ((JournaledScriptStateProvider) provider).stateChanged(name);
+        }
+    }
+}
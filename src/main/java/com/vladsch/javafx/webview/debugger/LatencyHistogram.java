@@ -0,0 +1,91 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with power of 2 microsecond buckets
+ * <p>
+ * Recording is a few atomic increments without allocation, percentiles are computed when a
+ * snapshot is taken and are the upper bound of the bucket holding the percentile, at most
+ * twice the actual value and never more than the maximum recorded.
+ */
+final class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    // bucket i holds values of 2^(i-1) to 2^i - 1 microseconds, bucket 0 holds 0
+    private final AtomicLongArray myBuckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder myCount = new LongAdder();
+    private final LongAdder mySumNanos = new LongAdder();
+    private final AtomicLong myMaxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value / 1000));
+
+        myBuckets.incrementAndGet(bucket);
+        myCount.increment();
+        mySumNanos.add(value);
+
+        long max;
+        while (value > (max = myMaxNanos.get()) && !myMaxNanos.compareAndSet(max, value)) ;
+    }
+
+    LatencySnapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = myBuckets.get(i);
+            count += buckets[i];
+        }
+
+        long maxNanos = myMaxNanos.get();
+        double meanMillis = count == 0 ? 0 : mySumNanos.sum() / (double) count / 1_000_000;
+        return new LatencySnapshot(count, meanMillis,
+                percentileMillis(buckets, count, 0.50, maxNanos),
+                percentileMillis(buckets, count, 0.90, maxNanos),
+                percentileMillis(buckets, count, 0.99, maxNanos),
+                maxNanos / 1_000_000.0);
+    }
+
+    private static double percentileMillis(long[] buckets, long count, double percentile, long maxNanos) {
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                long upperNanos = i == 0 ? 0 : ((1L << i) - 1) * 1000;
+                return Math.min(upperNanos, maxNanos) / 1_000_000.0;
+            }
+        }
+        return maxNanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+/**
+ * Latency histogram values at the time of the snapshot, all times in milliseconds. Exposed
+ * through BrowserMetricsMXBean as composite data, must be public.
+ */
+public class LatencySnapshot {
+    private final long myCount;
+    private final double myMeanMillis;
+    private final double myP50Millis;
+    private final double myP90Millis;
+    private final double myP99Millis;
+    private final double myMaxMillis;
+
+    public LatencySnapshot(long count, double meanMillis, double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+        myCount = count;
+        myMeanMillis = meanMillis;
+        myP50Millis = p50Millis;
+        myP90Millis = p90Millis;
+        myP99Millis = p99Millis;
+        myMaxMillis = maxMillis;
+    }
+
+    public long getCount() {
+        return myCount;
+    }
+
+    public double getMeanMillis() {
+        return myMeanMillis;
+    }
+
+    public double getP50Millis() {
+        return myP50Millis;
+    }
+
+    public double getP90Millis() {
+        return myP90Millis;
+    }
+
+    public double getP99Millis() {
+        return myP99Millis;
+    }
+
+    public double getMaxMillis() {
+        return myMaxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count: %d, mean: %.1f, p50: %.1f, p90: %.1f, p99: %.1f, max: %.1f ms", myCount, myMeanMillis, myP50Millis, myP90Millis, myP99Millis, myMaxMillis);
+    }
+}
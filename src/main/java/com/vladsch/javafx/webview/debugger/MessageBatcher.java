@@ -0,0 +1,196 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces messages posted from any thread into batches rendered on the FX thread
+ * <p>
+ * Drains run on pulses from an animation timer, started by the first message queued and stopped
+ * once the queue is empty. Each pulse renders at most maxBatchSize messages, the rest wait for the
+ * next pulse, so the FX thread cost per pulse is bounded regardless of producer rate. When the
+ * queue exceeds maxQueueSize the oldest messages are dropped and counted.
+ * <p>
+ * Sequence numbers are assigned when a message is queued, so batches are always in ascending
+ * sequence order.
+ */
+class MessageBatcher {
+    private final ConcurrentLinkedQueue<ConsoleMessage> myQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger myQueueDepth = new AtomicInteger();
+    private final AtomicBoolean myDrainScheduled = new AtomicBoolean();
+    private int mySequence = 0;     // guarded by myQueue
+    private final Consumer<List<ConsoleMessage>> myRenderer;
+    private final int myMaxBatchSize;
+    private final int myMaxQueueSize;
+    private final long myFlushDelayNanos;
+    private volatile long myFirstQueuedNanos;
+    private final AnimationTimer myDrainTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drain();
+        }
+    };
+
+    // stats
+    private final AtomicLong myBatchCount = new AtomicLong();
+    private final AtomicLong myRenderedCount = new AtomicLong();
+    private final AtomicLong myDroppedCount = new AtomicLong();
+    private final AtomicInteger myMaxBatch = new AtomicInteger();
+    private final AtomicInteger myMaxQueueDepth = new AtomicInteger();
+
+    /**
+     * @param renderer         called on FX thread with each batch
+     * @param maxBatchSize     maximum messages rendered per pulse
+     * @param maxQueueSize     maximum messages waiting, oldest are dropped past this
+     * @param flushDelayMillis time to let messages accumulate after the first one is queued,
+     *                         bounds the latency between post and render, 0 to drain on next pulse
+     */
+    MessageBatcher(@NotNull Consumer<List<ConsoleMessage>> renderer, int maxBatchSize, int maxQueueSize, long flushDelayMillis) {
+        myRenderer = renderer;
+        myMaxBatchSize = Math.max(1, maxBatchSize);
+        myMaxQueueSize = Math.max(myMaxBatchSize, maxQueueSize);
+        myFlushDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, flushDelayMillis));
+    }
+
+    /**
+     * Queue a message with the next sequence number
+     *
+     * @param type message type
+     * @param text message text
+     * @return queued message
+     */
+    @NotNull
+    ConsoleMessage post(@NotNull String type, @NotNull String text) {
+        ConsoleMessage message;
+        synchronized (myQueue) {
+            message = new ConsoleMessage(++mySequence, type, text);
+            myQueue.offer(message);
+        }
+
+        int depth = myQueueDepth.incrementAndGet();
+
+        while (depth > myMaxQueueSize) {
+            if (myQueue.poll() == null) break;
+            myDroppedCount.incrementAndGet();
+            depth = myQueueDepth.decrementAndGet();
+        }
+
+        updateMax(myMaxQueueDepth, depth);
+        scheduleDrain();
+        return message;
+    }
+
+    private void scheduleDrain() {
+        if (myDrainScheduled.compareAndSet(false, true)) {
+            myFirstQueuedNanos = System.nanoTime();
+            if (Platform.isFxApplicationThread()) {
+                myDrainTimer.start();
+            } else {
+                Platform.runLater(myDrainTimer::start);
+            }
+        }
+    }
+
+    // called on each pulse while messages are queued
+    private void drain() {
+        if (System.nanoTime() - myFirstQueuedNanos < myFlushDelayNanos) return;
+
+        ArrayList<ConsoleMessage> batch = new ArrayList<>(Math.min(myMaxBatchSize, Math.max(1, myQueueDepth.get())));
+        ConsoleMessage message;
+
+        while (batch.size() < myMaxBatchSize && (message = myQueue.poll()) != null) {
+            myQueueDepth.decrementAndGet();
+            batch.add(message);
+        }
+
+        if (!batch.isEmpty()) {
+            myBatchCount.incrementAndGet();
+            myRenderedCount.addAndGet(batch.size());
+            updateMax(myMaxBatch, batch.size());
+            myRenderer.accept(batch);
+        }
+
+        if (myQueue.isEmpty()) {
+            // stop until the next post, one made before the flag was reset did not start the timer
+            myDrainTimer.stop();
+            myDrainScheduled.set(false);
+            if (!myQueue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) ;
+    }
+
+    int getQueueDepth() {
+        return myQueueDepth.get();
+    }
+
+    int getMaxQueueDepth() {
+        return myMaxQueueDepth.get();
+    }
+
+    long getBatchCount() {
+        return myBatchCount.get();
+    }
+
+    long getRenderedCount() {
+        return myRenderedCount.get();
+    }
+
+    long getDroppedCount() {
+        return myDroppedCount.get();
+    }
+
+    int getMaxBatch() {
+        return myMaxBatch.get();
+    }
+
+    double getAverageBatch() {
+        long batches = myBatchCount.get();
+        return batches == 0 ? 0 : (double) myRenderedCount.get() / batches;
+    }
+
+    String getStatsSummary() {
+        return String.format("batches: %d, rendered: %d, avg/batch: %.1f, max/batch: %d, queued: %d, max queued: %d, dropped: %d",
+                getBatchCount(), getRenderedCount(), getAverageBatch(), getMaxBatch(), getQueueDepth(), getMaxQueueDepth(), getDroppedCount());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import javafx.concurrent.Worker;
+import javafx.scene.web.WebView;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Message pane console
+ * <p>
+ * The shell page is loaded once, messages are appended to its live DOM via a script call,
+ * no file is written and the page is not reloaded per message.
+ * <p>
+ * All methods must be called on the FX application thread.
+ */
+class MessageConsole {
+    final WebView myMessageView;
+    private final StringBuilder myPending = new StringBuilder();
+    private boolean myShellLoaded = false;
+    private boolean myReplacePending = false;
+    private int myMaxMessages = 5000;
+
+    MessageConsole(@NotNull WebView messageView) {
+        myMessageView = messageView;
+
+        myMessageView.getEngine().getLoadWorker().stateProperty().addListener((ov, oldState, newState) -> {
+            if (newState == Worker.State.SUCCEEDED) {
+                myShellLoaded = true;
+                flushPending();
+            }
+        });
+    }
+
+    void load() {
+        myShellLoaded = false;
+        myMessageView.getEngine().load(getShellURL());
+    }
+
+    @NotNull
+    static String getShellURL() {
+        if (ClasspathResourceServer.isRegistered()) {
+            return ClasspathResourceServer.getURL(0, "/messages.html");
+        }
+        return Browser.getURL(getShellFile());
+    }
+
+    @NotNull
+    public static File getShellFile() {
+        return new File("public/messages.html");
+    }
+
+    void setMaxMessages(int maxMessages) {
+        myMaxMessages = Math.max(1, maxMessages);
+    }
+
+    void append(@NotNull List<ConsoleMessage> messages) {
+        if (!messages.isEmpty()) {
+            appendRendered(render(messages));
+        }
+    }
+
+    /**
+     * Replace displayed messages
+     *
+     * @param messages messages to show
+     */
+    void show(@NotNull List<ConsoleMessage> messages) {
+        myPending.setLength(0);
+        myPending.append(render(messages));
+        myReplacePending = true;
+        if (myShellLoaded) {
+            flushPending();
+        }
+    }
+
+    static String render(@NotNull List<ConsoleMessage> messages) {
+        StringBuilder sb = new StringBuilder(messages.size() * 64);
+        for (ConsoleMessage message : messages) {
+            sb.append(renderMessage(message.sequence, message.type, message.text));
+        }
+        return sb.toString();
+    }
+
+    void appendRendered(String html) {
+        myPending.append(html);
+        if (myShellLoaded) {
+            flushPending();
+        }
+    }
+
+    private void flushPending() {
+        if (myPending.length() > 0 || myReplacePending) {
+            String html = myPending.toString();
+            String function = myReplacePending ? "setMessages" : "appendMessages";
+            myPending.setLength(0);
+            myReplacePending = false;
+            try {
+                myMessageView.getEngine().executeScript(function + "(" + jsString(html) + ", " + myMaxMessages + ");");
+            } catch (Exception ignored) {
+
+            }
+        }
+    }
+
+    static String renderMessage(int count, String type, String message) {
+        String prefix;
+
+        switch (type) {
+            case "warn":
+                prefix = "<span class='msg warn'>";
+                break;
+            case "error":
+                prefix = "<span class='msg error'>";
+                break;
+            case "debug":
+                prefix = "<span class='msg debug'>";
+                break;
+            default:
+            case "log":
+                prefix = "<span class='msg'>";
+                break;
+        }
+
+        return prefix + "<span class='msgCount'>[" + count + "]</span> " + message + "</span><br/>\n";
+    }
+
+    static String jsString(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        sb.append('"');
+        int iMax = text.length();
+        for (int i = 0; i < iMax; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\u2028':
+                    sb.append("\\u2028");
+                    break;
+                case '\u2029':
+                    sb.append("\\u2029");
+                    break;
+                default:
+                    if (c < ' ') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntFunction;
+
+/**
+ * Index of recent message history, built as messages are added
+ * <p>
+ * Messages are identified by their ordinal in {@link MessageStore}. Indexed are the message type,
+ * the message sequence number and lower case letter/digit tokens of the text. A substring query is
+ * resolved against the token dictionary through an index of the 1 to 3 character grams of its tokens,
+ * only queries which span more than one token need to look at message text to verify candidates.
+ * <p>
+ * The index is kept in segments of segmentSize messages, when there are more than maxSegments the
+ * oldest segment with its tokens is dropped, so heap use is bounded and older messages are only
+ * in the exported history.
+ * <p>
+ * Mutated and queried only on the FX application thread.
+ */
+class MessageIndex {
+    static final String[] TYPES = new String[] { "log", "warn", "error", "debug" };
+    static final int GRAM = 3;
+
+    private final int mySegmentSize;
+    private final int myMaxSegments;
+    private final ArrayDeque<Segment> mySegments = new ArrayDeque<>();
+    private int myTotalCount;
+
+    MessageIndex() {
+        this(8192, 8);
+    }
+
+    /**
+     * @param segmentSize messages per segment
+     * @param maxSegments segments kept, older are dropped
+     */
+    MessageIndex(int segmentSize, int maxSegments) {
+        mySegmentSize = Math.max(1, segmentSize);
+        myMaxSegments = Math.max(1, maxSegments);
+    }
+
+    /**
+     * @return maximum number of indexed messages, older ones are not searched
+     */
+    int getCapacity() {
+        return mySegmentSize * myMaxSegments;
+    }
+
+    /**
+     * @return number of indexed messages
+     */
+    int size() {
+        int size = 0;
+        for (Segment segment : mySegments) {
+            size += segment.mySize;
+        }
+        return size;
+    }
+
+    int getTokenCount() {
+        int count = 0;
+        for (Segment segment : mySegments) {
+            count += segment.myTokens.size();
+        }
+        return count;
+    }
+
+    static int typeIndex(@NotNull String type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) return i;
+        }
+        return 0;
+    }
+
+    /**
+     * Add message, must be called in the same order messages are added to the store, sequence numbers
+     * must ascend in that order, as assigned by {@link MessageBatcher}
+     *
+     * @param message message
+     */
+    void add(@NotNull ConsoleMessage message) {
+        Segment segment = mySegments.peekLast();
+        if (segment == null || segment.mySize == mySegmentSize) {
+            if (mySegments.size() == myMaxSegments) {
+                mySegments.removeFirst();
+            }
+            segment = new Segment(myTotalCount, mySegmentSize);
+            mySegments.addLast(segment);
+        }
+
+        myTotalCount++;
+        segment.add(message);
+    }
+
+    void addAll(@NotNull List<ConsoleMessage> messages) {
+        for (ConsoleMessage message : messages) {
+            add(message);
+        }
+    }
+
+    /**
+     * Find messages
+     *
+     * @param type          message type or null for all
+     * @param fromSequence  minimum sequence number, inclusive
+     * @param toSequence    maximum sequence number, inclusive
+     * @param text          substring to find, case insensitive, null or empty for all
+     * @param limit         maximum number of matches to return, the most recent are returned
+     * @param messageSource message source by ordinal, used to verify multi-token text matches, null if the message
+     *                      can not be read on this thread, the candidate is then returned for the caller to verify
+     * @return ordinals of matching messages in ascending order
+     */
+    @NotNull
+    int[] query(@Nullable String type, int fromSequence, int toSequence, @Nullable String text, int limit, @NotNull IntFunction<ConsoleMessage> messageSource) {
+        if (limit <= 0 || fromSequence > toSequence) return new int[0];
+
+        String query = text == null ? "" : text.toLowerCase(Locale.ROOT);
+        String[] queryTokens = tokenize(query);
+        // only punctuation or more than one token, can only verify
+        boolean needVerify = !query.isEmpty() && (queryTokens.length != 1 || !queryTokens[0].equals(query));
+
+        int[] result = new int[Math.min(limit, size())];
+        int count = 0;
+
+        Iterator<Segment> iterator = mySegments.descendingIterator();
+        while (iterator.hasNext() && count < result.length) {
+            count = iterator.next().query(type == null ? -1 : typeIndex(type), fromSequence, toSequence, queryTokens, needVerify ? query : null, messageSource, result, count);
+        }
+
+        // reverse to ascending order
+        int[] ordinals = new int[count];
+        for (int i = 0; i < count; i++) {
+            ordinals[i] = result[count - 1 - i];
+        }
+        return ordinals;
+    }
+
+    @NotNull
+    static String[] tokenize(@NotNull String text) {
+        ArrayList<String> tokens = new ArrayList<>();
+        int iMax = text.length();
+        int tokenStart = -1;
+        for (int i = 0; i <= iMax; i++) {
+            if (i < iMax && Character.isLetterOrDigit(text.charAt(i))) {
+                if (tokenStart < 0) tokenStart = i;
+            } else if (tokenStart >= 0) {
+                tokens.add(text.substring(tokenStart, i));
+                tokenStart = -1;
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    private static class Segment {
+        final int myFirstOrdinal;
+        final int[] mySequences;
+        int mySize;
+        final BitSet[] myTypeBits = new BitSet[TYPES.length];
+        final HashMap<String, Postings> myTokens = new HashMap<>();
+        // tokens containing each 1 to GRAM character gram
+        final HashMap<String, ArrayList<Postings>> myGrams = new HashMap<>();
+
+        Segment(int firstOrdinal, int size) {
+            myFirstOrdinal = firstOrdinal;
+            mySequences = new int[size];
+            for (int i = 0; i < myTypeBits.length; i++) {
+                myTypeBits[i] = new BitSet();
+            }
+        }
+
+        void add(@NotNull ConsoleMessage message) {
+            int index = mySize++;
+            mySequences[index] = message.sequence;
+            myTypeBits[typeIndex(message.type)].set(index);
+
+            for (String token : tokenize(message.text)) {
+                String lowerToken = token.toLowerCase(Locale.ROOT);
+                Postings postings = myTokens.get(lowerToken);
+                if (postings == null) {
+                    postings = new Postings(lowerToken);
+                    myTokens.put(lowerToken, postings);
+                    addGrams(postings);
+                }
+                postings.add(index);
+            }
+        }
+
+        private void addGrams(@NotNull Postings postings) {
+            String token = postings.myToken;
+            HashSet<String> grams = new HashSet<>();
+            int iMax = token.length();
+            for (int i = 0; i < iMax; i++) {
+                for (int length = 1; length <= GRAM && i + length <= iMax; length++) {
+                    grams.add(token.substring(i, i + length));
+                }
+            }
+
+            for (String gram : grams) {
+                myGrams.computeIfAbsent(gram, g -> new ArrayList<>()).add(postings);
+            }
+        }
+
+        @NotNull
+        private List<Postings> matchingTokens(@NotNull String queryToken) {
+            if (queryToken.length() <= GRAM) {
+                ArrayList<Postings> tokens = myGrams.get(queryToken);
+                return tokens == null ? Collections.emptyList() : tokens;
+            }
+
+            // tokens with the rarest gram of the query token, verified to contain all of it
+            ArrayList<Postings> rarest = null;
+            for (int i = 0; i + GRAM <= queryToken.length(); i++) {
+                ArrayList<Postings> tokens = myGrams.get(queryToken.substring(i, i + GRAM));
+                if (tokens == null) return Collections.emptyList();
+                if (rarest == null || tokens.size() < rarest.size()) rarest = tokens;
+            }
+
+            ArrayList<Postings> matching = new ArrayList<>();
+            for (Postings postings : rarest) {
+                if (postings.myToken.contains(queryToken)) matching.add(postings);
+            }
+            return matching;
+        }
+
+        int query(int type, int fromSequence, int toSequence, @NotNull String[] queryTokens, @Nullable String verifyText, @NotNull IntFunction<ConsoleMessage> messageSource, @NotNull int[] result, int count) {
+            int from = lowerBound(fromSequence);
+            int to = toSequence == Integer.MAX_VALUE ? mySize : lowerBound(toSequence + 1);
+            if (from >= to) return count;
+
+            BitSet candidates;
+            if (type >= 0) {
+                candidates = (BitSet) myTypeBits[type].clone();
+            } else {
+                candidates = new BitSet(mySize);
+                candidates.set(0, mySize);
+            }
+
+            for (String queryToken : queryTokens) {
+                BitSet bits = new BitSet(mySize);
+                for (Postings postings : matchingTokens(queryToken)) {
+                    postings.setBits(bits);
+                }
+                candidates.and(bits);
+            }
+
+            for (int i = candidates.previousSetBit(to - 1); i >= from && count < result.length; i = candidates.previousSetBit(i - 1)) {
+                int ordinal = myFirstOrdinal + i;
+                if (verifyText != null) {
+                    ConsoleMessage message = messageSource.apply(ordinal);
+                    if (message != null && !message.text.toLowerCase(Locale.ROOT).contains(verifyText)) continue;
+                }
+                result[count++] = ordinal;
+            }
+            return count;
+        }
+
+        private int lowerBound(int sequence) {
+            int index = Arrays.binarySearch(mySequences, 0, mySize, sequence);
+            if (index < 0) return -index - 1;
+            return index;
+        }
+    }
+
+    private static class Postings {
+        final String myToken;
+        int[] ordinals = new int[4];
+        int size;
+
+        Postings(@NotNull String token) {
+            myToken = token;
+        }
+
+        void add(int ordinal) {
+            // ordinals are added in ascending order, skip repeated tokens in the same message
+            if (size > 0 && ordinals[size - 1] == ordinal) return;
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+
+        void setBits(BitSet bits) {
+            for (int i = 0; i < size; i++) {
+                bits.set(ordinals[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.web.WebView;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Message pane: message view with filter bar, message history, index and FX thread batching
+ * <p>
+ * A lazy pane shows a placeholder until released, then creates its message view on the first
+ * message or when the placeholder is clicked. Messages posted before that are kept in the history
+ * and shown when the view is created.
+ */
+class MessagePane {
+    private static final String ALL_TYPES = "all";
+    private static final Pattern SEQUENCE_RANGE = Pattern.compile("^#(\\d*)(?:-(\\d*))?\\s*(.*)$");
+    private static final AtomicInteger ourPaneCount = new AtomicInteger();
+
+    final Supplier<WebView> myMessageViewFactory;
+    @Nullable WebView myMessageView = null;
+    @Nullable MessageConsole myMessageConsole = null;
+    final MessageStore myMessageStore;
+    final MessageIndex myMessageIndex = new MessageIndex();
+    final MessageBatcher myMessageBatcher;
+    final BorderPane myPane;
+    final ChoiceBox<String> myTypeFilter = new ChoiceBox<>();
+    final TextField mySearchField = new TextField();
+    final Label myMatchCount = new Label();
+    final Label myPlaceholder = new Label();
+    final String myFilterTaskKey = "message-filter-" + ourPaneCount.incrementAndGet();
+    private boolean myViewHeld;
+    private long myViewCreateTime = 0;
+
+    // current filter, null type is all types
+    private @Nullable String myFilterType = null;
+    private @NotNull String myFilterText = "";
+    private int myFilterFrom = 0;
+    private int myFilterTo = Integer.MAX_VALUE;
+
+    MessagePane(@NotNull Supplier<WebView> messageViewFactory, boolean lazy, int historySize, int batchSize, int queueSize, int flushDelay) {
+        myMessageViewFactory = messageViewFactory;
+        myViewHeld = lazy;
+
+        // recent messages are kept in memory and shown in the message pane, older ones spill to disk
+        myMessageStore = new MessageStore(historySize, createSpillFile());
+
+        // messages are rendered in batches on pulses, at most batchSize per pulse
+        myMessageBatcher = new MessageBatcher(this::render, batchSize, queueSize, flushDelay);
+
+        myTypeFilter.getItems().add(ALL_TYPES);
+        myTypeFilter.getItems().addAll(MessageIndex.TYPES);
+        myTypeFilter.setValue(ALL_TYPES);
+        myTypeFilter.setOnAction(e -> applyFilter());
+
+        mySearchField.setPromptText("Search last " + myMessageIndex.getCapacity() + " messages, #from-to for sequence range");
+        mySearchField.setOnAction(e -> applyFilter());
+        mySearchField.textProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue.isEmpty()) applyFilter();
+        });
+
+        HBox filterBar = new HBox(4, myTypeFilter, mySearchField, myMatchCount);
+        HBox.setHgrow(mySearchField, Priority.ALWAYS);
+        filterBar.setPadding(new Insets(2));
+
+        myPlaceholder.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
+        myPlaceholder.setAlignment(Pos.CENTER);
+        myPlaceholder.setOnMouseClicked(e -> createView());
+        updatePlaceholder();
+
+        myPane = new BorderPane(myPlaceholder, filterBar, null, null, null);
+        if (!lazy) {
+            createView();
+        }
+    }
+
+    private void createView() {
+        if (myMessageConsole != null) return;
+
+        long start = System.nanoTime();
+        myMessageView = myMessageViewFactory.get();
+        myMessageConsole = new MessageConsole(myMessageView);
+        myMessageConsole.setMaxMessages(myMessageStore.getCapacity());
+        myPane.setCenter(myMessageView);
+        myMessageConsole.load();
+
+        // show messages posted before the view existed
+        applyFilter();
+        myViewCreateTime = System.nanoTime() - start;
+    }
+
+    private void updatePlaceholder() {
+        int count = myMessageStore.getTotalCount();
+        myPlaceholder.setText(count == 0 ? "No messages, click to open" : count + (count == 1 ? " message" : " messages") + ", click to show");
+    }
+
+    /**
+     * Let a lazy pane create its message view on the next message, now if there are messages
+     */
+    void release() {
+        if (!myViewHeld) return;
+
+        myViewHeld = false;
+        if (myMessageStore.getTotalCount() > 0) {
+            createView();
+        }
+    }
+
+    boolean isViewCreated() {
+        return myMessageConsole != null;
+    }
+
+    @NotNull
+    Node getNode() {
+        return myPane;
+    }
+
+    @NotNull
+    ConsoleMessage post(@NotNull String type, @NotNull String text) {
+        return myMessageBatcher.post(type, text);
+    }
+
+    private void render(List<ConsoleMessage> messages) {
+        String previous = FxStallWatchdog.enter("message render");
+        try {
+            myMessageStore.addAll(messages);
+            myMessageIndex.addAll(messages);
+
+            if (myMessageConsole == null) {
+                // view shows the history when created
+                if (myViewHeld) updatePlaceholder();
+                else createView();
+                return;
+            }
+
+            if (isFiltered()) {
+                ArrayList<ConsoleMessage> matched = new ArrayList<>();
+                for (ConsoleMessage message : messages) {
+                    if (matches(message)) matched.add(message);
+                }
+                myMessageConsole.append(matched);
+            } else {
+                myMessageConsole.append(messages);
+            }
+        } finally {
+            FxStallWatchdog.exit(previous);
+        }
+    }
+
+    private boolean isFiltered() {
+        return myFilterType != null || !myFilterText.isEmpty() || myFilterFrom > 0 || myFilterTo < Integer.MAX_VALUE;
+    }
+
+    private boolean matches(ConsoleMessage message) {
+        return matches(message, myFilterType, myFilterFrom, myFilterTo, myFilterText.toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean matches(ConsoleMessage message, @Nullable String type, int from, int to, @NotNull String lowerText) {
+        return (type == null || type.equals(message.type))
+                && message.sequence >= from && message.sequence <= to
+                && (lowerText.isEmpty() || message.text.toLowerCase(Locale.ROOT).contains(lowerText));
+    }
+
+    void applyFilter() {
+        String type = myTypeFilter.getValue();
+        myFilterType = type == null || type.equals(ALL_TYPES) ? null : type;
+
+        String search = mySearchField.getText().trim();
+        myFilterFrom = 0;
+        myFilterTo = Integer.MAX_VALUE;
+
+        Matcher matcher = SEQUENCE_RANGE.matcher(search);
+        if (matcher.matches()) {
+            if (!matcher.group(1).isEmpty()) myFilterFrom = Integer.parseInt(matcher.group(1));
+            if (matcher.group(2) != null && !matcher.group(2).isEmpty()) myFilterTo = Integer.parseInt(matcher.group(2));
+            else if (matcher.group(2) == null && !matcher.group(1).isEmpty()) myFilterTo = myFilterFrom;
+            search = matcher.group(3);
+        }
+        myFilterText = search;
+
+        // a pending search of spilled messages is for the previous filter
+        IoExecutor.getInstance().cancel(myFilterTaskKey);
+
+        if (!isFiltered()) {
+            myMatchCount.setText("");
+            if (myMessageConsole != null) myMessageConsole.show(myMessageStore.getRecent());
+            return;
+        }
+
+        long start = System.nanoTime();
+        int ringStart = myMessageStore.getRingStart();
+        int queryTotal = myMessageStore.getTotalCount();
+
+        // only the in-memory ring is read on the FX thread, spilled candidates are returned unverified
+        int[] ordinals = myMessageIndex.query(myFilterType, myFilterFrom, myFilterTo, myFilterText, myMessageStore.getCapacity(),
+                ordinal -> ordinal >= ringStart ? myMessageStore.getMessage(ordinal) : null);
+
+        int spilled = 0;
+        while (spilled < ordinals.length && ordinals[spilled] < ringStart) spilled++;
+
+        ArrayList<ConsoleMessage> recent = new ArrayList<>(ordinals.length - spilled);
+        for (int i = spilled; i < ordinals.length; i++) {
+            recent.add(myMessageStore.getMessage(ordinals[i]));
+        }
+
+        if (spilled == 0) {
+            showMatches(recent, start);
+            return;
+        }
+
+        // read and verify spilled candidates on the I/O thread, messages added meanwhile are matched when the result is shown
+        int[] spilledOrdinals = Arrays.copyOf(ordinals, spilled);
+        IntFunction<ConsoleMessage> spillReader = myMessageStore.getSpillReader();
+        String filterType = myFilterType;
+        int filterFrom = myFilterFrom;
+        int filterTo = myFilterTo;
+        String lowerText = myFilterText.toLowerCase(Locale.ROOT);
+        Predicate<ConsoleMessage> filter = message -> matches(message, filterType, filterFrom, filterTo, lowerText);
+
+        IoExecutor.getInstance().submit(myFilterTaskKey, () -> {
+            ArrayList<ConsoleMessage> messages = new ArrayList<>(spilledOrdinals.length + recent.size());
+            for (int ordinal : spilledOrdinals) {
+                ConsoleMessage message = spillReader.apply(ordinal);
+                if (message != null && filter.test(message)) messages.add(message);
+            }
+            messages.addAll(recent);
+            return messages;
+        }, messages -> {
+            int ringFrom = Math.max(queryTotal, myMessageStore.getRingStart());
+            for (int ordinal = ringFrom; ordinal < myMessageStore.getTotalCount(); ordinal++) {
+                ConsoleMessage message = myMessageStore.getMessage(ordinal);
+                if (message != null && filter.test(message)) messages.add(message);
+            }
+            showMatches(messages, start);
+        }, e -> myMatchCount.setText("Search failed: " + e.getMessage()));
+    }
+
+    private void showMatches(@NotNull List<ConsoleMessage> messages, long start) {
+        long elapsed = System.nanoTime() - start;
+
+        // say so when older messages are no longer indexed
+        int indexed = myMessageIndex.size();
+        int total = myMessageStore.getTotalCount();
+        myMatchCount.setText(indexed < total ? String.format("%d in last %d of %d (%.1f ms)", messages.size(), indexed, total, elapsed / 1e6)
+                : String.format("%d of %d (%.1f ms)", messages.size(), indexed, elapsed / 1e6));
+        if (myMessageConsole != null) myMessageConsole.show(messages);
+    }
+
+    @Nullable
+    private static File createSpillFile() {
+        try {
+            File spillFile = File.createTempFile("WebViewDebugSample-messages", ".spill");
+            spillFile.deleteOnExit();
+            return spillFile;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Export full message history on the I/O thread
+     *
+     * @param exportFile file to write
+     * @param onDone     called on I/O thread with type and message to report
+     */
+    void export(@NotNull File exportFile, @NotNull BiConsumer<String, String> onDone) {
+        MessageStore.Snapshot snapshot = myMessageStore.snapshot();
+        IoExecutor.getInstance().execute(() -> {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(exportFile), StandardCharsets.UTF_8)) {
+                myMessageStore.export(writer, snapshot);
+                onDone.accept("log", "Messages exported to " + exportFile.getAbsolutePath());
+            } catch (IOException e) {
+                onDone.accept("error", "Message export failed: " + e.getMessage());
+            }
+        });
+    }
+
+    void close() {
+        IoExecutor.getInstance().cancel(myFilterTaskKey);
+        myMessageStore.close();
+    }
+
+    String getStatsSummary() {
+        return myMessageBatcher.getStatsSummary()
+                + ", history: " + myMessageStore.getTotalCount() + ", spilled: " + myMessageStore.getSpilledCount()
+                + ", indexed tokens: " + myMessageIndex.getTokenCount()
+                + (myMessageConsole == null ? ", view: not created" : String.format(", view created in %.1f ms", myViewCreateTime / 1e6));
+    }
+}
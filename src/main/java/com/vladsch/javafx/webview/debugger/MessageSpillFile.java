@@ -0,0 +1,235 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Append only message spill file, written through memory mapped regions
+ * <p>
+ * Record: int sequence, long timestamp, short type length, type UTF-8, int text length, text UTF-8
+ * <p>
+ * Record offsets are written to a mapped offsets file next to it, heap use does not grow with record count.
+ * <p>
+ * Written only from one thread, read from other threads only up to a count and length captured on the writer thread.
+ */
+class MessageSpillFile {
+    private static final int REGION_SIZE = 4 * 1024 * 1024;
+    private static final int RECORD_HEADER = 4 + 8 + 2 + 4;
+
+    private final File myFile;
+    private final RandomAccessFile myRandomAccessFile;
+    private final FileChannel myChannel;
+    private MappedByteBuffer myRegion;
+    private long myRegionStart;
+    private long myLength;
+    private int myCount;
+    private final File myOffsetsFile;
+    private final RandomAccessFile myOffsetsRandomAccessFile;
+    private final FileChannel myOffsetsChannel;
+    private MappedByteBuffer myOffsetsRegion;
+
+    MessageSpillFile(@NotNull File file) throws IOException {
+        myFile = file;
+        myRandomAccessFile = new RandomAccessFile(file, "rw");
+        myRandomAccessFile.setLength(0);
+        myChannel = myRandomAccessFile.getChannel();
+        myRegion = null;
+        myRegionStart = 0;
+        myLength = 0;
+        myCount = 0;
+
+        myOffsetsFile = new File(file.getPath() + ".offsets");
+        myOffsetsRandomAccessFile = new RandomAccessFile(myOffsetsFile, "rw");
+        myOffsetsRandomAccessFile.setLength(0);
+        myOffsetsChannel = myOffsetsRandomAccessFile.getChannel();
+        myOffsetsRegion = null;
+    }
+
+    File getFile() {
+        return myFile;
+    }
+
+    long getLength() {
+        return myLength;
+    }
+
+    int getCount() {
+        return myCount;
+    }
+
+    void append(@NotNull ConsoleMessage message) throws IOException {
+        byte[] type = message.type.getBytes(StandardCharsets.UTF_8);
+        byte[] text = message.text.getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER + type.length + text.length;
+
+        if (myRegion == null || myRegion.remaining() < recordSize) {
+            myRegionStart = myLength;
+            myRegion = myChannel.map(FileChannel.MapMode.READ_WRITE, myRegionStart, Math.max(REGION_SIZE, recordSize));
+        }
+
+        if (myOffsetsRegion == null || myOffsetsRegion.remaining() < 8) {
+            myOffsetsRegion = myOffsetsChannel.map(FileChannel.MapMode.READ_WRITE, myCount * 8L, REGION_SIZE);
+        }
+        myOffsetsRegion.putLong(myLength);
+
+        myRegion.putInt(message.sequence);
+        myRegion.putLong(message.timestamp);
+        myRegion.putShort((short) type.length);
+        myRegion.put(type);
+        myRegion.putInt(text.length);
+        myRegion.put(text);
+        myLength += recordSize;
+        myCount++;
+    }
+
+    /**
+     * Read a single record
+     *
+     * @param index record index, 0 is first spilled message
+     * @return message
+     */
+    @NotNull
+    ConsoleMessage read(int index) throws IOException {
+        return read(index, myCount, myLength);
+    }
+
+    /**
+     * Read a single record on another thread
+     *
+     * @param index  record index, 0 is first spilled message
+     * @param count  record count returned by {@link #getCount()}
+     * @param length length returned by {@link #getLength()} at the same time
+     * @return message
+     */
+    @NotNull
+    ConsoleMessage read(int index, int count, long length) throws IOException {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("index: " + index + " count: " + count);
+
+        ByteBuffer offsets = ByteBuffer.allocate(index + 1 < count ? 16 : 8);
+        readFully(myOffsetsChannel, offsets, index * 8L);
+        long offset = offsets.getLong();
+        long end = offsets.hasRemaining() ? offsets.getLong() : length;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - offset));
+        readFully(myChannel, buffer, offset);
+
+        ConsoleMessage message = readRecord(buffer);
+        if (message == null) throw new IOException("Invalid spill record " + index + " at " + offset);
+        return message;
+    }
+
+    private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Read records up to given length, must be a length returned by {@link #getLength()}
+     *
+     * @param length   length of file to read
+     * @param consumer consumer of records
+     */
+    void forEach(long length, @NotNull Consumer<ConsoleMessage> consumer) throws IOException {
+        if (length == 0) return;
+
+        try (RandomAccessFile file = new RandomAccessFile(myFile, "r")) {
+            FileChannel channel = file.getChannel();
+            long position = 0;
+            while (position < length) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(length - position, REGION_SIZE * 4L));
+                int lastRecordEnd = 0;
+
+                while (region.remaining() >= RECORD_HEADER) {
+                    ConsoleMessage message = readRecord(region);
+                    if (message == null) break;
+                    lastRecordEnd = region.position();
+                    consumer.accept(message);
+                }
+
+                if (lastRecordEnd == 0) {
+                    // record larger than read region
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, position, length - position);
+                    ConsoleMessage message = readRecord(region);
+                    if (message == null) break;
+                    lastRecordEnd = region.position();
+                    consumer.accept(message);
+                }
+                position += lastRecordEnd;
+            }
+        }
+    }
+
+    @Nullable
+    private static ConsoleMessage readRecord(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < RECORD_HEADER) return null;
+
+        int sequence = buffer.getInt();
+        long timestamp = buffer.getLong();
+        int typeLength = buffer.getShort();
+        if (buffer.remaining() < typeLength + 4) {
+            buffer.position(start);
+            return null;
+        }
+        byte[] type = new byte[typeLength];
+        buffer.get(type);
+        int textLength = buffer.getInt();
+        if (buffer.remaining() < textLength) {
+            buffer.position(start);
+            return null;
+        }
+        byte[] text = new byte[textLength];
+        buffer.get(text);
+        return new ConsoleMessage(sequence, new String(type, StandardCharsets.UTF_8), new String(text, StandardCharsets.UTF_8), timestamp);
+    }
+
+    void close() {
+        try {
+            myRegion = null;
+            myOffsetsRegion = null;
+            myChannel.close();
+            myRandomAccessFile.close();
+            myOffsetsChannel.close();
+            myOffsetsRandomAccessFile.close();
+        } catch (IOException ignored) {
+
+        }
+        //noinspection ResultOfMethodCallIgnored
+        myOffsetsFile.delete();
+    }
+}
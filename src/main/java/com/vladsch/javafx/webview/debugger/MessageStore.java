@@ -0,0 +1,253 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Message history with a fixed size in-memory ring of recent messages
+ * <p>
+ * Messages evicted from the ring are appended to a memory mapped spill file so heap use stays
+ * constant, full history is available through {@link #export(Writer, Snapshot)}.
+ * <p>
+ * Mutated only on the FX application thread.
+ */
+class MessageStore {
+    private final ConsoleMessage[] myRing;
+    private int myHead;     // index of oldest message
+    private int mySize;
+    private final @Nullable File mySpillFile;
+    private @Nullable MessageSpillFile mySpill;
+    private boolean mySpillFailed;
+    private int myTotalCount;
+
+    MessageStore(int capacity, @Nullable File spillFile) {
+        myRing = new ConsoleMessage[Math.max(1, capacity)];
+        myHead = 0;
+        mySize = 0;
+        mySpillFile = spillFile;
+    }
+
+    int getCapacity() {
+        return myRing.length;
+    }
+
+    int size() {
+        return mySize;
+    }
+
+    int getSpilledCount() {
+        return mySpill == null ? 0 : mySpill.getCount();
+    }
+
+    /**
+     * @return number of messages added, spilled or in ring
+     */
+    int getTotalCount() {
+        return myTotalCount;
+    }
+
+    /**
+     * @return ordinal of the oldest message in the in-memory ring
+     */
+    int getRingStart() {
+        return myTotalCount - mySize;
+    }
+
+    /**
+     * Capture spilled history so that its messages can be read on another thread
+     *
+     * @return message by ordinal, null for messages not spilled at the time of the call or if the spill file could not be created
+     */
+    @NotNull
+    IntFunction<ConsoleMessage> getSpillReader() {
+        MessageSpillFile spill = mySpill;
+        if (spill == null || spill.getCount() != getRingStart()) return ordinal -> null;
+
+        int count = spill.getCount();
+        long length = spill.getLength();
+        return ordinal -> {
+            if (ordinal < 0 || ordinal >= count) return null;
+            try {
+                return spill.read(ordinal, count, length);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Get message by its ordinal in the full history
+     *
+     * @param ordinal 0 is first message ever added
+     * @return message or null if it was not spilled because spill file could not be created
+     */
+    @Nullable
+    ConsoleMessage getMessage(int ordinal) {
+        int ringStart = myTotalCount - mySize;
+        if (ordinal >= ringStart) {
+            return get(ordinal - ringStart);
+        }
+
+        if (mySpill != null && ordinal < mySpill.getCount() && mySpill.getCount() == ringStart) {
+            try {
+                return mySpill.read(ordinal);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    void add(@NotNull ConsoleMessage message) {
+        myTotalCount++;
+        if (mySize == myRing.length) {
+            spill(myRing[myHead]);
+            myRing[myHead] = message;
+            myHead = (myHead + 1) % myRing.length;
+        } else {
+            myRing[(myHead + mySize) % myRing.length] = message;
+            mySize++;
+        }
+    }
+
+    void addAll(@NotNull List<ConsoleMessage> messages) {
+        for (ConsoleMessage message : messages) {
+            add(message);
+        }
+    }
+
+    /**
+     * @param index 0 is oldest message in ring
+     * @return message
+     */
+    @NotNull
+    ConsoleMessage get(int index) {
+        if (index < 0 || index >= mySize) throw new IndexOutOfBoundsException("index: " + index + " size: " + mySize);
+        return myRing[(myHead + index) % myRing.length];
+    }
+
+    @NotNull
+    List<ConsoleMessage> getRecent() {
+        ArrayList<ConsoleMessage> messages = new ArrayList<>(mySize);
+        for (int i = 0; i < mySize; i++) {
+            messages.add(get(i));
+        }
+        return messages;
+    }
+
+    private void spill(ConsoleMessage message) {
+        if (mySpillFile == null || mySpillFailed) return;
+
+        try {
+            if (mySpill == null) {
+                mySpill = new MessageSpillFile(mySpillFile);
+            }
+            mySpill.append(message);
+        } catch (IOException e) {
+            // history will not include spilled messages, ring still works
+            mySpillFailed = true;
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Capture current history so that it can be exported on another thread
+     *
+     * @return snapshot
+     */
+    @NotNull
+    Snapshot snapshot() {
+        return new Snapshot(mySpill == null ? 0 : mySpill.getLength(), getRecent());
+    }
+
+    void export(@NotNull Writer writer, @NotNull Snapshot snapshot) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        IOException[] exception = new IOException[] { null };
+
+        if (mySpill != null && snapshot.spillLength > 0) {
+            mySpill.forEach(snapshot.spillLength, message -> {
+                if (exception[0] == null) {
+                    try {
+                        writeMessage(writer, dateFormat, message);
+                    } catch (IOException e) {
+                        exception[0] = e;
+                    }
+                }
+            });
+            if (exception[0] != null) throw exception[0];
+        }
+
+        for (ConsoleMessage message : snapshot.recent) {
+            writeMessage(writer, dateFormat, message);
+        }
+        writer.flush();
+    }
+
+    private static void writeMessage(Writer writer, SimpleDateFormat dateFormat, ConsoleMessage message) throws IOException {
+        writer.write(dateFormat.format(new Date(message.timestamp)));
+        writer.write(String.format(" %-5s [%d] ", message.type, message.sequence));
+        writer.write(message.text);
+        writer.write('\n');
+    }
+
+    void close() {
+        // no spilling after close, the spill file is closed and deleted on the I/O thread
+        MessageSpillFile spill = mySpill;
+        File spillFile = mySpillFile;
+        mySpill = null;
+        mySpillFailed = true;
+
+        if (spillFile != null) {
+            IoExecutor.getInstance().execute(() -> {
+                if (spill != null) spill.close();
+                //noinspection ResultOfMethodCallIgnored
+                spillFile.delete();
+            });
+        }
+    }
+
+    static class Snapshot {
+        final long spillLength;
+        final List<ConsoleMessage> recent;
+
+        Snapshot(long spillLength, List<ConsoleMessage> recent) {
+            this.spillLength = spillLength;
+            this.recent = recent;
+        }
+    }
+}
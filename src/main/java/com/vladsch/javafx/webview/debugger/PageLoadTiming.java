@@ -0,0 +1,92 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Page load phase times from Browser.load() to the script side pageLoadComplete()
+ * <p>
+ * Phases: reloading is JSBridge.pageReloading(), loading is from WebEngine.load() to SUCCEEDED,
+ * scriptBridges is exposing Java objects to page scripts, jsBridge is from connectJsBridge()
+ * to pageLoadComplete(), which includes replaying console output and state cached by page scripts.
+ */
+final class PageLoadTiming {
+    static final String[] PHASES = new String[] { "reloading", "loading", "scriptBridges", "jsBridge", "total" };
+    static final int RELOADING = 0;
+    static final int LOADING = 1;
+    static final int SCRIPT_BRIDGES = 2;
+    static final int JS_BRIDGE = 3;
+    static final int TOTAL = 4;
+
+    final String url;
+    final long loadStart;
+    long reloaded;
+    long succeeded;
+    long bridgeStart;
+    long complete;
+
+    PageLoadTiming(@NotNull String url, long loadStart) {
+        this.url = url;
+        this.loadStart = loadStart;
+    }
+
+    boolean isComplete() {
+        return complete != 0;
+    }
+
+    /**
+     * @param phase phase index
+     * @return phase duration in nanoseconds
+     */
+    long getPhaseNanos(int phase) {
+        switch (phase) {
+            case RELOADING:
+                return reloaded - loadStart;
+            case LOADING:
+                return succeeded - reloaded;
+            case SCRIPT_BRIDGES:
+                return bridgeStart - succeeded;
+            case JS_BRIDGE:
+                return complete - bridgeStart;
+            case TOTAL:
+                return complete - loadStart;
+            default:
+                throw new IllegalArgumentException("phase " + phase);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Page load in ").append(getPhaseNanos(TOTAL) / 1000 / 1000.0).append(" ms (");
+        for (int i = 0; i < TOTAL; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(PHASES[i]).append(' ').append(getPhaseNanos(i) / 1000 / 1000.0);
+        }
+        return sb.append("): ").append(url).toString();
+    }
+}
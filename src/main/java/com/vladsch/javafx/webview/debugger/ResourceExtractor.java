@@ -0,0 +1,236 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Extract class path resources to a directory, skipping resources which have not changed
+ * <p>
+ * A resource is identified by its size and jar entry or file time, recorded in a manifest in the target
+ * directory. If the time is not available the content CRC is used instead. Changed resources are
+ * copied in parallel as bytes through NIO channels, written to a temporary file and moved into place.
+ */
+class ResourceExtractor {
+    static final String MANIFEST_NAME = ".extracted.properties";
+
+    private final Class<?> myResourceClass;
+    private final File myTargetDir;
+
+    private long myCheckNanos;
+    private long myCopyNanos;
+    private long myManifestNanos;
+    private int myCopiedCount;
+    private int mySkippedCount;
+
+    ResourceExtractor(@NotNull Class<?> resourceClass, @NotNull File targetDir) {
+        myResourceClass = resourceClass;
+        myTargetDir = targetDir;
+    }
+
+    /**
+     * Extract resources
+     *
+     * @param resources resource paths starting with /
+     * @throws IOException if a resource could not be extracted
+     */
+    void extract(@NotNull String[] resources) throws IOException {
+        long start = System.nanoTime();
+
+        if (!myTargetDir.exists() && !myTargetDir.mkdirs()) {
+            throw new IOException("Cannot create " + myTargetDir);
+        }
+
+        File manifestFile = new File(myTargetDir, MANIFEST_NAME);
+        Properties manifest = new Properties();
+        if (manifestFile.exists()) {
+            try (InputStream inputStream = Files.newInputStream(manifestFile.toPath())) {
+                manifest.load(inputStream);
+            } catch (IOException | IllegalArgumentException ignored) {
+                manifest.clear();
+            }
+        }
+
+        // check phase: only metadata, unless resource time is not available
+        ArrayList<String> changed = new ArrayList<>();
+        Properties updated = new Properties();
+        for (String resource : resources) {
+            URL url = myResourceClass.getResource(resource);
+            if (url == null) throw new IOException("Resource not found " + resource);
+
+            String signature = getSignature(url);
+            File targetFile = getTargetFile(resource);
+            updated.setProperty(resource, signature);
+
+            if (!signature.equals(manifest.getProperty(resource)) || !targetFile.isFile() || targetFile.length() != getSize(signature)) {
+                changed.add(resource);
+            }
+        }
+
+        long checked = System.nanoTime();
+        myCheckNanos = checked - start;
+
+        // copy phase
+        if (!changed.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(changed.size(), Math.max(2, Runtime.getRuntime().availableProcessors())));
+            try {
+                List<Future<?>> futures = new ArrayList<>(changed.size());
+                for (String resource : changed) {
+                    futures.add(executor.submit(() -> {
+                        copyResource(resource);
+                        return null;
+                    }));
+                }
+
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Resource extraction interrupted", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        long copied = System.nanoTime();
+        myCopyNanos = copied - checked;
+        myCopiedCount = changed.size();
+        mySkippedCount = resources.length - changed.size();
+
+        // manifest phase
+        if (!changed.isEmpty() || !updated.equals(manifest)) {
+            Path tmpManifest = new File(myTargetDir, MANIFEST_NAME + ".tmp").toPath();
+            try (OutputStream outputStream = Files.newOutputStream(tmpManifest)) {
+                updated.store(outputStream, "extracted resource signatures: size:time or size:crc");
+            }
+            Files.move(tmpManifest, manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        myManifestNanos = System.nanoTime() - copied;
+    }
+
+    @NotNull
+    private File getTargetFile(@NotNull String resource) {
+        return new File(myTargetDir, resource.startsWith("/") ? resource.substring(1) : resource);
+    }
+
+    @NotNull
+    private String getSignature(@NotNull URL url) throws IOException {
+        URLConnection connection = url.openConnection();
+        // do not keep jar file handles open
+        connection.setUseCaches(false);
+        long size = connection.getContentLengthLong();
+        long time = connection.getLastModified();
+
+        if (size >= 0 && time > 0) {
+            try {
+                connection.getInputStream().close();
+            } catch (IOException ignored) {
+
+            }
+            return size + ":" + time;
+        }
+
+        CRC32 crc32 = new CRC32();
+        long length = 0;
+        try (InputStream inputStream = connection.getInputStream()) {
+            byte[] buffer = new byte[16384];
+            int n;
+            while (-1 != (n = inputStream.read(buffer))) {
+                crc32.update(buffer, 0, n);
+                length += n;
+            }
+        }
+        return length + ":crc" + Long.toHexString(crc32.getValue());
+    }
+
+    private static long getSize(@NotNull String signature) {
+        int pos = signature.indexOf(':');
+        try {
+            return Long.parseLong(pos < 0 ? signature : signature.substring(0, pos));
+        } catch (NumberFormatException ignored) {
+            return -1;
+        }
+    }
+
+    private void copyResource(@NotNull String resource) throws IOException {
+        File targetFile = getTargetFile(resource);
+        Path tmpPath = new File(targetFile.getPath() + ".tmp").toPath();
+
+        try (InputStream inputStream = myResourceClass.getResourceAsStream(resource)) {
+            if (inputStream == null) throw new IOException("Resource not found " + resource);
+
+            try (ReadableByteChannel in = Channels.newChannel(inputStream);
+                 FileChannel out = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0;
+                long n;
+                while ((n = out.transferFrom(in, position, 1024 * 1024)) > 0) {
+                    position += n;
+                }
+            }
+        }
+
+        Files.move(tmpPath, targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    int getCopiedCount() {
+        return myCopiedCount;
+    }
+
+    int getSkippedCount() {
+        return mySkippedCount;
+    }
+
+    String getReport() {
+        return String.format("Resources: %d copied, %d unchanged, check: %.1f ms, copy: %.1f ms, manifest: %.1f ms",
+                myCopiedCount, mySkippedCount, myCheckNanos / 1e6, myCopyNanos / 1e6, myManifestNanos / 1e6);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsArray;
+import com.vladsch.boxed.json.BoxedJson;
+import org.apache.log4j.Level;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Console sink exposed to page scripts as window.markdownNavigatorConsole
+ * <p>
+ * Receives batches of serialized console entries when the debug server is not running, one upcall
+ * per batch instead of one per console call with a live arguments object. Entries go to the log.
+ * With the debug server running the page calls the JSBridge directly so Chrome Dev Tools get
+ * the arguments. Must be public for JavaScript to call it.
+ */
+public class ScriptConsoleSink {
+    static final String MEMBER_NAME = "markdownNavigatorConsole";
+
+    private final DevToolsDebuggerJsBridge myJSBridge;
+    private final int myInstance;
+    private final AtomicLong myBatches = new AtomicLong();
+    private final AtomicLong myEntries = new AtomicLong();
+    private final AtomicLong myDropped = new AtomicLong();
+    private final AtomicLong myErrors = new AtomicLong();
+
+    ScriptConsoleSink(@NotNull DevToolsDebuggerJsBridge jsBridge, int instance) {
+        myJSBridge = jsBridge;
+        myInstance = instance;
+    }
+
+    public boolean isDirect() {
+        return myJSBridge.isDebuggerEnabled();
+    }
+
+    /**
+     * @param batch JSON array of [type, timestamp, text] entries
+     */
+    public void log(String batch) {
+        myBatches.incrementAndGet();
+
+        BoxedJsArray entries;
+        try {
+            entries = BoxedJson.boxedFrom(new StringReader("{\"e\":" + batch + "}")).getJsArray("e");
+        } catch (RuntimeException e) {
+            myErrors.incrementAndGet();
+            LogHandler.LOG_HANDLER.error("[" + myInstance + "] invalid console batch", e);
+            return;
+        }
+
+        int iMax = entries.size();
+        myEntries.addAndGet(iMax);
+
+        for (int i = 0; i < iMax; i++) {
+            BoxedJsArray entry = entries.getJsArray(i);
+            String type = entry.getJsString(0).getString("log");
+            Level level = getLevel(type);
+
+            // message is only built for enabled levels
+            if (!AsyncLogHandler.isEnabled(level)) continue;
+
+            String message = "[" + myInstance + "] console." + type + ": " + entry.getJsString(2).getString("");
+
+            if (level == Level.ERROR) {
+                LogHandler.LOG_HANDLER.error(message);
+            } else if (level == Level.WARN) {
+                LogHandler.LOG_HANDLER.warn(message);
+            } else if (level == Level.INFO) {
+                LogHandler.LOG_HANDLER.info(message);
+            } else {
+                LogHandler.LOG_HANDLER.debug(message);
+            }
+        }
+    }
+
+    @NotNull
+    private static Level getLevel(@NotNull String type) {
+        switch (type) {
+            case "assert":
+            case "error":
+            case "exception":
+                return Level.ERROR;
+
+            case "warning":
+                return Level.WARN;
+
+            case "log":
+            case "info":
+                return Level.INFO;
+
+            default:
+                return Level.DEBUG;
+        }
+    }
+
+    /**
+     * @param count entries dropped by the page before the JSBridge connected
+     */
+    public void dropped(int count) {
+        myDropped.addAndGet(count);
+    }
+
+    long getBatchCount() {
+        return myBatches.get();
+    }
+
+    long getEntryCount() {
+        return myEntries.get();
+    }
+
+    long getDroppedCount() {
+        return myDropped.get();
+    }
+
+    String getStatsSummary() {
+        long batches = myBatches.get();
+        long entries = myEntries.get();
+        return "batches: " + batches + ", entries: " + entries + ", upcalls saved: " + Math.max(0, entries - batches)
+                + ", dropped before bridge: " + myDropped.get() + ", invalid batches: " + myErrors.get();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsArray;
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJsValue;
+import com.vladsch.boxed.json.BoxedJson;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State setter exposed to page scripts as window.markdownNavigatorState
+ * <p>
+ * Values are passed as JSON text so they are not marshalled through JSObject, and the
+ * state provider is notified of the change so its serialized state cache and journal
+ * are updated. Deferred writes arrive as one upcall for all keys written since the last flush.
+ * Must be public for JavaScript to call it.
+ */
+public class ScriptStateBridge {
+    static final String MEMBER_NAME = "markdownNavigatorState";
+
+    private final JfxScriptStateProvider myStateProvider;
+    private final AtomicLong myUpcalls = new AtomicLong();
+    private final AtomicLong myUpcallsSaved = new AtomicLong();
+    private final AtomicLong myWrites = new AtomicLong();
+
+    ScriptStateBridge(@NotNull JfxScriptStateProvider stateProvider) {
+        myStateProvider = stateProvider;
+    }
+
+    public void setState(String name, String json) {
+        myUpcalls.incrementAndGet();
+        myWrites.incrementAndGet();
+        BoxedJsObject state = myStateProvider.getState();
+
+        if (json == null || json.equals("undefined")) {
+            state.remove(name);
+        } else {
+            BoxedJsValue value;
+            try {
+                value = BoxedJson.boxedFrom(new StringReader("{\"v\":" + json + "}")).get("v");
+            } catch (RuntimeException e) {
+                LogHandler.LOG_HANDLER.error("invalid state value for " + name, e);
+                return;
+            }
+
+            if (value.isNull()) {
+                state.remove(name);
+            } else if (value.isValid()) {
+                state.put(name, value);
+            } else {
+                return;
+            }
+        }
+
+        stateChanged(name);
+    }
+
+    /**
+     * @param json        object of key values to set, null values remove the key
+     * @param removedJson array of keys to remove
+     * @param writes      number of writes the page coalesced into this call
+     */
+    public void setStates(String json, String removedJson, int writes) {
+        myUpcalls.incrementAndGet();
+        myUpcallsSaved.addAndGet(Math.max(0, writes - 1));
+        myWrites.addAndGet(Math.max(1, writes));
+
+        BoxedJsObject values;
+        BoxedJsArray removed;
+        try {
+            values = BoxedJson.boxedFrom(new StringReader(json));
+            removed = removedJson == null ? null : BoxedJson.arrayFrom(new StringReader(removedJson));
+        } catch (RuntimeException e) {
+            LogHandler.LOG_HANDLER.error("invalid state batch", e);
+            return;
+        }
+
+        BoxedJsObject state = myStateProvider.getState();
+        for (String name : values.keySet()) {
+            BoxedJsValue value = values.get(name);
+            if (value.isNull()) {
+                state.remove(name);
+            } else if (value.isValid()) {
+                state.put(name, value);
+            } else {
+                continue;
+            }
+            stateChanged(name);
+        }
+
+        if (removed != null) {
+            int iMax = removed.size();
+            for (int i = 0; i < iMax; i++) {
+                String name = removed.getJsString(i).getString(null);
+                if (name != null) {
+                    state.remove(name);
+                    stateChanged(name);
+                }
+            }
+        }
+    }
+
+    private void stateChanged(String name) {
+        if (myStateProvider instanceof JournaledScriptStateProvider) {
+            ((JournaledScriptStateProvider) myStateProvider).stateChanged(name);
+        }
+    }
+
+    long getUpcallCount() {
+        return myUpcalls.get();
+    }
+
+    /**
+     * @return state writes made by page scripts, including writes coalesced by the page
+     */
+    long getWriteCount() {
+        return myWrites.get();
+    }
+
+    String getStatsSummary() {
+        return "upcalls: " + myUpcalls.get() + ", upcalls saved by coalescing: " + myUpcallsSaved.get();
+    }
+}
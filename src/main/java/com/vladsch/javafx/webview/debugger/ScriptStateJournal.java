@@ -0,0 +1,351 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import com.vladsch.boxed.json.BoxedJsObject;
+import com.vladsch.boxed.json.BoxedJsValue;
+import com.vladsch.boxed.json.BoxedJson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write behind journal for script state
+ * <p>
+ * Changed keys are serialized on the calling thread, which must own the state, and coalesced
+ * for coalesceMillis before the writer thread appends them to the journal, one JSON object per line:
+ * {"k":key,"v":value} or {"k":key} for a removed key. When the journal grows past compactAfter lines
+ * a full snapshot is written to a temporary file and atomically moved over the snapshot file, then the
+ * journal is truncated.
+ * <p>
+ * Recovery reads the snapshot and replays the journal. Replaying entries already in the snapshot is harmless,
+ * a torn last line is ignored and the journal compacted so new entries are not appended to it.
+ */
+class ScriptStateJournal {
+    private static final String REMOVED = new String("");
+
+    private final File mySnapshotFile;
+    private final File myJournalFile;
+    private final long myCoalesceMillis;
+    private final int myCompactAfter;
+    private final ScheduledExecutorService myWriter;
+
+    private final ConcurrentHashMap<String, String> myPending = new ConcurrentHashMap<>();
+    private final AtomicBoolean myFlushScheduled = new AtomicBoolean();
+
+    // owned by writer thread after recovery
+    private final LinkedHashMap<String, String> myCommitted = new LinkedHashMap<>();
+    private int myJournalLines;
+    private FileOutputStream myJournalStream;
+    private Writer myJournalWriter;
+
+    // owned by state thread, used to detect keys changed without notification
+    private final HashMap<String, String> myCaptured = new HashMap<>();
+
+    ScriptStateJournal(@NotNull File snapshotFile, long coalesceMillis, int compactAfter) {
+        mySnapshotFile = snapshotFile;
+        myJournalFile = new File(snapshotFile.getPath() + ".journal");
+        myCoalesceMillis = coalesceMillis;
+        myCompactAfter = compactAfter;
+        myWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ScriptStateJournal");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Load snapshot and replay journal
+     *
+     * @return recovered state
+     */
+    @NotNull
+    BoxedJsObject recover() {
+        BoxedJsObject state = null;
+
+        if (mySnapshotFile.exists()) {
+            try (Reader reader = new InputStreamReader(Files.newInputStream(mySnapshotFile.toPath()), StandardCharsets.UTF_8)) {
+                state = BoxedJson.boxedFrom(reader);
+            } catch (IOException | RuntimeException e) {
+                LogHandler.LOG_HANDLER.error("Script state snapshot read failed: " + mySnapshotFile, e);
+            }
+        }
+
+        if (state == null || !state.isValid()) {
+            state = BoxedJson.of();
+        }
+
+        int replayed = 0;
+        boolean torn = false;
+        if (myJournalFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(myJournalFile.toPath()), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
+
+                    BoxedJsObject entry;
+                    try {
+                        entry = BoxedJson.boxedFrom(new StringReader(line));
+                    } catch (RuntimeException ignored) {
+                        // torn write, appending after it would corrupt the next entry
+                        torn = true;
+                        continue;
+                    }
+
+                    BoxedJsValue key = entry.get("k");
+                    if (!entry.isValid() || !key.isValid() || !key.isString()) continue;
+
+                    String name = key.asJsString().getString();
+                    if (entry.containsKey("v")) {
+                        state.put(name, entry.get("v"));
+                    } else {
+                        state.remove(name);
+                    }
+                    replayed++;
+                }
+            } catch (IOException e) {
+                LogHandler.LOG_HANDLER.error("Script state journal replay failed: " + myJournalFile, e);
+            }
+        }
+
+        myCaptured.clear();
+        for (String name : state.keySet()) {
+            myCaptured.put(name, state.get(name).toString());
+        }
+
+        LinkedHashMap<String, String> committed = new LinkedHashMap<>(myCaptured);
+        int journalLines = replayed;
+        boolean compact = torn;
+        myWriter.execute(() -> {
+            myCommitted.clear();
+            myCommitted.putAll(committed);
+            myJournalLines = journalLines;
+
+            if (compact) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    LogHandler.LOG_HANDLER.error("Script state compaction failed: " + mySnapshotFile, e);
+                }
+            }
+        });
+
+        return state;
+    }
+
+    /**
+     * Record current value of a key, must be called on the thread owning the state
+     *
+     * @param state state
+     * @param name  key which changed
+     */
+    void changed(@NotNull BoxedJsObject state, @NotNull String name) {
+        String value = state.containsKey(name) ? state.get(name).toString() : null;
+        String captured = myCaptured.get(name);
+
+        if (value == null ? captured != null : !value.equals(captured)) {
+            if (value == null) myCaptured.remove(name);
+            else myCaptured.put(name, value);
+
+            myPending.put(name, value == null ? REMOVED : value);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Compare all keys with last recorded values, for changes made without notification,
+     * must be called on the thread owning the state
+     *
+     * @param state state
+     */
+    void captureAll(@NotNull BoxedJsObject state) {
+        for (String name : state.keySet()) {
+            changed(state, name);
+        }
+
+        for (String name : myCaptured.keySet().toArray(new String[0])) {
+            if (!state.containsKey(name)) {
+                changed(state, name);
+            }
+        }
+    }
+
+    /**
+     * Serialized value of a key as of the last change or capture, must be called on the thread owning the state
+     *
+     * @param name key
+     * @return JSON text or null if key is not in state
+     */
+    @Nullable
+    String getSerialized(@NotNull String name) {
+        return myCaptured.get(name);
+    }
+
+    private void scheduleFlush() {
+        if (myFlushScheduled.compareAndSet(false, true)) {
+            try {
+                myWriter.schedule(this::flush, myCoalesceMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // closed, changes after close are not saved
+            }
+        }
+    }
+
+    private void flush() {
+        myFlushScheduled.set(false);
+        if (myPending.isEmpty()) return;
+
+        StringBuilder sb = new StringBuilder();
+        for (String name : myPending.keySet().toArray(new String[0])) {
+            String value = myPending.remove(name);
+            if (value == null) continue;
+
+            sb.append("{\"k\":").append(BoxedJson.boxedOf(name));
+            if (value == REMOVED) {
+                myCommitted.remove(name);
+            } else {
+                myCommitted.put(name, value);
+                sb.append(",\"v\":").append(value);
+            }
+            sb.append("}\n");
+            myJournalLines++;
+        }
+
+        try {
+            if (myJournalWriter == null) {
+                myJournalStream = new FileOutputStream(myJournalFile, true);
+                myJournalWriter = new OutputStreamWriter(myJournalStream, StandardCharsets.UTF_8);
+            }
+            myJournalWriter.write(sb.toString());
+            myJournalWriter.flush();
+            myJournalStream.getChannel().force(false);
+
+            if (myJournalLines >= myCompactAfter) {
+                compact();
+            }
+        } catch (IOException e) {
+            LogHandler.LOG_HANDLER.error("Script state journal write failed: " + myJournalFile, e);
+        }
+    }
+
+    private void compact() throws IOException {
+        File tmpFile = new File(mySnapshotFile.getPath() + ".tmp");
+
+        try (FileOutputStream outputStream = new FileOutputStream(tmpFile)) {
+            Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            writer.write(getSnapshotText());
+            writer.flush();
+            outputStream.getChannel().force(true);
+        }
+
+        Files.move(tmpFile.toPath(), mySnapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // snapshot has everything, start new journal
+        closeJournal();
+        //noinspection ResultOfMethodCallIgnored
+        myJournalFile.delete();
+        myJournalLines = 0;
+    }
+
+    @NotNull
+    private String getSnapshotText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        String sep = "";
+        for (Map.Entry<String, String> entry : myCommitted.entrySet()) {
+            sb.append(sep).append(BoxedJson.boxedOf(entry.getKey())).append(':').append(entry.getValue());
+            sep = ",";
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private void closeJournal() {
+        if (myJournalWriter != null) {
+            try {
+                myJournalWriter.close();
+            } catch (IOException ignored) {
+
+            }
+            myJournalWriter = null;
+            myJournalStream = null;
+        }
+    }
+
+    /**
+     * Flush pending changes, compact and stop the writer, an empty state removes the snapshot
+     *
+     * @param timeoutMillis maximum time to wait for writer
+     */
+    void close(long timeoutMillis) {
+        myWriter.execute(() -> {
+            flush();
+            try {
+                if (myCommitted.isEmpty()) {
+                    closeJournal();
+                    //noinspection ResultOfMethodCallIgnored
+                    myJournalFile.delete();
+                    //noinspection ResultOfMethodCallIgnored
+                    mySnapshotFile.delete();
+                } else if (myJournalLines > 0 || !mySnapshotFile.exists()) {
+                    compact();
+                }
+            } catch (IOException e) {
+                LogHandler.LOG_HANDLER.error("Script state close failed: " + mySnapshotFile, e);
+            }
+            closeJournal();
+        });
+
+        myWriter.shutdown();
+        try {
+            myWriter.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
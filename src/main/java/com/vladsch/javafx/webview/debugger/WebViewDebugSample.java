@@ -28,19 +28,24 @@ package com.vladsch.javafx.webview.debugger;
 import com.vladsch.boxed.json.BoxedJsObject;
 import com.vladsch.boxed.json.BoxedJson;
 import javafx.application.Application;
+import javafx.collections.ListChangeListener;
 import javafx.scene.Scene;
+import javafx.scene.control.Tab;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.util.function.Function;
 
-public class WebViewDebugSample extends Application implements JfxScriptStateProvider {
+public class WebViewDebugSample extends Application implements JournaledScriptStateProvider {
 
     private Scene scene;
     static private BoxedJsObject ourJsState = BoxedJson.of(); // start with empty state
+    static private ScriptStateJournal ourStateJournal = null;
+    private BrowserPool myBrowserPool;
 
     @NotNull
     @Override
@@ -51,38 +56,75 @@ public class WebViewDebugSample extends Application implements JfxScriptStatePro
     @Override
     public void setState(@NotNull final BoxedJsObject state) {
         ourJsState = state;
+        if (ourStateJournal != null) {
+            ourStateJournal.captureAll(ourJsState);
+        }
+    }
+
+    @Override
+    public void stateChanged(@NotNull final String name) {
+        if (ourStateJournal != null) {
+            ourStateJournal.changed(ourJsState, name);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getSerializedState(@NotNull final String name) {
+        // journal has the serialized value from the last change
+        return ourStateJournal != null ? ourStateJournal.getSerialized(name) : JournaledScriptStateProvider.super.getSerializedState(name);
     }
 
     // context menu code from: https://stackoverflow.com/questions/27047447/customized-context-menu-on-javafx-webview-webengine
     @Override
     public void start(Stage stage) {
-        Browser browser = new Browser(this);
+        // FX thread stalls are logged with the stack of the FX thread, 0 threshold disables the watchdog
+        int stallThreshold = ourJsState.getJsNumber("fxStallThreshold").intValue(200);
+        if (stallThreshold > 0) {
+            FxStallWatchdog.start(stallThreshold, 50, 32);
+        }
+
+        // more than one instance are shown in tabs, all debugged through one server
+        // first browser gets new views, the pool warms up views for ones opened later, 0 size disables it
+        int poolSize = ourJsState.getJsNumber("webViewPoolSize").intValue(2);
+        WebViewPool webViewPool = poolSize <= 0 ? null : new WebViewPool(poolSize * 2, 0, ourJsState.getJsNumber("webViewPoolIdleTimeout").intValue(60000), 1000);
+        myBrowserPool = new BrowserPool(this, webViewPool);
+        Browser browser = myBrowserPool.addBrowser();
+        for (int i = 1; i < ourInstances; i++) {
+            myBrowserPool.addBrowser();
+        }
+
+        if (ourStartupReport != null) {
+            browser.addMessage("debug", ourStartupReport);
+        }
 
         // create the scene
         stage.setTitle("JavaFX WebView Debugger Sample");
-        scene = new Scene(browser.getRootPane(), 750, 800, Color.web("#ffffff"));
+        scene = new Scene(ourInstances > 1 ? myBrowserPool.getNode() : browser.getRootPane(), 750, 800, Color.web("#ffffff"));
+
+        // single instance has no tabs until another one is opened
+        myBrowserPool.getNode().getTabs().addListener((ListChangeListener<Tab>) c -> {
+            if (scene.getRoot() != myBrowserPool.getNode() && myBrowserPool.size() > 1) {
+                scene.setRoot(myBrowserPool.getNode());
+            }
+        });
         stage.setScene(scene);
         stage.show();
     }
 
     @Override
     public void stop() throws Exception {
-        // write out the script state for the page
-        File stateFile = new File("WebViewDebugSample.json");
-        if (ourJsState.isEmpty()) {
-            stateFile.delete();
-        } else {
-            // save state for next run
-            try {
-                FileWriter stateWriter = new FileWriter(stateFile);
-                stateWriter.write(ourJsState.toString());
-                stateWriter.flush();
-                stateWriter.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        FxStallWatchdog.stop();
+        if (myBrowserPool != null) {
+            myBrowserPool.close();
+        }
+        // every state change is already journaled, flush the pending ones and compact
+        if (ourStateJournal != null) {
+            ourStateJournal.close(2000);
         }
+        IoExecutor.getInstance().close(1000);
 
+        ourLogHandler.close(1000);
         System.exit(0);
     }
 
@@ -90,113 +132,51 @@ public class WebViewDebugSample extends Application implements JfxScriptStatePro
     public void init() throws Exception {
         super.init();
 
-        // load previously stored state for the page
-        try {
-            File stateFile = new File("WebViewDebugSample.json");
-            if (stateFile.exists()) {
-                // read in the previous state
-                FileReader stateReader = new FileReader(stateFile);
-                ourJsState = BoxedJson.boxedFrom(stateReader);
-                stateReader.close();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        if (!ourJsState.isValid()) {
-            ourJsState = BoxedJson.of();
-        }
+        // load previously stored state for the page, snapshot and changes journaled since
+        ourStateJournal = new ScriptStateJournal(new File("WebViewDebugSample.json"), 250, 500);
+        ourJsState = ourStateJournal.recover();
     }
 
     static final Logger LOG = Logger.getLogger("com.vladsch.javafx.webview.debugger");
+    static final AsyncLogHandler ourLogHandler = new AsyncLogHandler(LOG, 8192, 100);
+    static String ourStartupReport = null;
+    static final boolean ourServeFromClasspath = Boolean.getBoolean("webview-debug-sample.classpath");
+    static final int ourInstances = Math.max(1, Integer.getInteger("webview-debug-sample.instances", 1));
 
     public static void main(String[] args) {
         //Platform.setImplicitExit(false);
         File publicDir = new File("public");
 
-        LogHandler.LOG_HANDLER = new LogHandler() {
-            @Override
-            public void trace(@NotNull String message) { LOG.trace(message); }
-
-            @Override
-            public void trace(@NotNull String message, @NotNull Throwable t) { LOG.trace(message, t); }
-
-            @Override
-            public void trace(@NotNull Throwable t) { LOG.trace(t); }
-
-            @Override
-            public boolean isTraceEnabled() {return LOG.isTraceEnabled(); }
-
-            @Override
-            public void debug(@NotNull String message) { LOG.debug(message); }
-
-            @Override
-            public void debug(@NotNull String message, @NotNull Throwable t) { LOG.debug(message, t); }
-
-            @Override
-            public void debug(@NotNull Throwable t) { LOG.debug(t); }
-
-            @Override
-            public void error(@NotNull String message) { LOG.error(message); }
-
-            @Override
-            public void error(@NotNull String message, @NotNull Throwable t) { LOG.error(message, t); }
-
-            @Override
-            public void error(@NotNull Throwable t) { LOG.error(t); }
-
-            @Override
-            public void info(@NotNull String message) { LOG.info(message); }
-
-            @Override
-            public void info(@NotNull String message, @NotNull Throwable t) { LOG.info(message, t); }
+        // logging is done on a background thread, callers only pay for queuing the event
+        LogHandler.LOG_HANDLER = ourLogHandler;
 
-            @Override
-            public void info(@NotNull Throwable t) { LOG.info(t); }
-
-            @Override
-            public boolean isDebugEnabled() {return LOG.isDebugEnabled(); }
-
-            @Override
-            public void warn(@NotNull String message) { LOG.warn(message); }
-
-            @Override
-            public void warn(@NotNull String message, @NotNull Throwable t) { LOG.warn(message, t); }
-
-            @Override
-            public void warn(@NotNull Throwable t) { LOG.warn(t); }
-        };
-
-        if (!publicDir.exists()) {
-            publicDir.mkdir();
-        }
+        if (ourServeFromClasspath) {
+            // pages and resources are served from memory, nothing is written to public
+            ClasspathResourceServer.register();
+        } else {
+            // copy resources to public for page display, README.html is instrumented and written by Browser.loadStartPage()
+            String[] resources = new String[] {
+                    "/default-fx.css",
+                    "/github-collapse.css",
+                    "/github-collapse-markdown.js",
+                    "/layout-fx.css",
+                    "/markdown-navigator.js",
+                    "/scroll-preview.js",
+                    "/messages.html",
+                    "/collapse-benchmark.html",
+                    "/taskitems.ttf",
+            };
 
-        // copy resources to public for page display
-        String[] resources = new String[] {
-                "/default-fx.css",
-                "/github-collapse.css",
-                "/github-collapse-markdown.js",
-                "/layout-fx.css",
-                "/markdown-navigator.js",
-                "/scroll-preview.js",
-                "/README.html",
-        };
-
-        try {
-            for (String resource : resources) {
-                File publicFile = new File(publicDir.getAbsolutePath() + resource);
-                FileWriter fileWriter = new FileWriter(publicFile);
-                copy(WebViewDebugSample.class.getResourceAsStream(resource), fileWriter);
-                fileWriter.close();
+            try {
+                // only changed resources are copied
+                ResourceExtractor extractor = new ResourceExtractor(WebViewDebugSample.class, publicDir);
+                extractor.extract(resources);
+                ourStartupReport = extractor.getReport();
+                LOG.info(ourStartupReport);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(1);
             }
-
-            // copy binary font file
-            InputStream inputStream = WebViewDebugSample.class.getResourceAsStream("/taskitems.ttf");
-            FileOutputStream outputStream = new FileOutputStream(publicDir.getAbsolutePath() + "/taskitems.ttf");
-            copyBinary(inputStream, outputStream);
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(1);
         }
 
         launch(args);
@@ -0,0 +1,197 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.concurrent.Worker;
+import javafx.scene.web.WebView;
+import javafx.util.Duration;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Pool of pre-created WebViews which already loaded a page with the sample's style sheets and
+ * bridge script, so engine initialization and resource parsing are done before a view is needed
+ * <p>
+ * The pool fills after the first acquire, once the page of the view just handed out had time to
+ * load, views are created one per pulse to not stall the FX thread, refilled after each acquire
+ * and trimmed to minimum size after being idle. All methods must be called on the FX thread.
+ */
+class WebViewPool {
+    static final String[] WARM_UP_STYLES = new String[] { "layout-fx.css", "default-fx.css", "github-collapse.css" };
+    static final String[] WARM_UP_SCRIPTS = new String[] { "markdown-navigator.js" };
+
+    private final int mySize;
+    private final int myMinSize;
+    private final ArrayDeque<WebView> myViews = new ArrayDeque<>();
+    private final PauseTransition myIdleTimer;
+    private final PauseTransition myRefillTimer;
+    private boolean myRefillScheduled = false;
+    private boolean myClosed = false;
+    private int myTargetSize;
+
+    // stats
+    private int myHits;
+    private int myMisses;
+    private int myCreated;
+    private int myTrimmed;
+
+    /**
+     * @param size        number of views to keep ready
+     * @param minSize     number of views kept after being idle
+     * @param idleTimeout milliseconds without acquire before trimming to minSize
+     * @param refillDelay milliseconds after acquire before refilling
+     */
+    WebViewPool(int size, int minSize, int idleTimeout, int refillDelay) {
+        mySize = Math.max(0, size);
+        myMinSize = Math.max(0, Math.min(minSize, mySize));
+        myTargetSize = mySize;
+        myIdleTimer = new PauseTransition(Duration.millis(Math.max(1, idleTimeout)));
+        myIdleTimer.setOnFinished(e -> trim());
+        myRefillTimer = new PauseTransition(Duration.millis(Math.max(1, refillDelay)));
+        myRefillTimer.setOnFinished(e -> scheduleRefill());
+    }
+
+    /**
+     * Get a warmed up view if one is ready, otherwise a new one
+     *
+     * @return view, not shared with anyone else
+     */
+    @NotNull
+    WebView acquire() {
+        myTargetSize = mySize;
+        if (mySize > 0) myIdleTimer.playFromStart();
+
+        WebView view = takeWarmed();
+        if (view == null) {
+            myMisses++;
+            view = new WebView();
+        } else {
+            myHits++;
+        }
+
+        if (mySize > 0) myRefillTimer.playFromStart();
+        return view;
+    }
+
+    /**
+     * @return true if a warmed view is ready
+     */
+    boolean hasWarmed() {
+        for (WebView view : myViews) {
+            if (view.getEngine().getLoadWorker().getState() == Worker.State.SUCCEEDED) return true;
+        }
+        return false;
+    }
+
+    private WebView takeWarmed() {
+        // prefer views done loading the warm-up page, any other one only saves construction
+        Iterator<WebView> iterator = myViews.iterator();
+        while (iterator.hasNext()) {
+            WebView view = iterator.next();
+            if (view.getEngine().getLoadWorker().getState() == Worker.State.SUCCEEDED) {
+                iterator.remove();
+                return view;
+            }
+        }
+        return myViews.pollFirst();
+    }
+
+    private void scheduleRefill() {
+        if (!myRefillScheduled && !myClosed && myViews.size() < myTargetSize) {
+            myRefillScheduled = true;
+            Platform.runLater(() -> {
+                myRefillScheduled = false;
+                if (!myClosed && myViews.size() < myTargetSize) {
+                    myViews.addLast(createWarmed());
+                    myCreated++;
+                    scheduleRefill();
+                }
+            });
+        }
+    }
+
+    private void trim() {
+        myTargetSize = myMinSize;
+        while (myViews.size() > myMinSize) {
+            dispose(myViews.pollLast());
+            myTrimmed++;
+        }
+    }
+
+    @NotNull
+    private static WebView createWarmed() {
+        WebView view = new WebView();
+        view.setContextMenuEnabled(false);
+        view.getEngine().loadContent(getWarmUpPage());
+        return view;
+    }
+
+    @NotNull
+    static String getWarmUpPage() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<!DOCTYPE html>\n<html>\n<head>\n<base href=\"").append(getResourceBaseURL()).append("\">\n");
+        for (String style : WARM_UP_STYLES) {
+            sb.append("<link rel=\"stylesheet\" href=\"").append(style).append("\">\n");
+        }
+        for (String script : WARM_UP_SCRIPTS) {
+            sb.append("<script src=\"").append(script).append("\"></script>\n");
+        }
+        sb.append("</head>\n<body></body>\n</html>\n");
+        return sb.toString();
+    }
+
+    @NotNull
+    static String getResourceBaseURL() {
+        if (ClasspathResourceServer.isRegistered()) {
+            return ClasspathResourceServer.getURL(0, "/");
+        }
+        String url = Browser.getURL(new File("public"));
+        return url.endsWith("/") ? url : url + "/";
+    }
+
+    private static void dispose(WebView view) {
+        view.getEngine().load(null);
+    }
+
+    void close() {
+        myClosed = true;
+        myIdleTimer.stop();
+        myRefillTimer.stop();
+        while (!myViews.isEmpty()) {
+            dispose(myViews.pollFirst());
+        }
+    }
+
+    String getStatsSummary() {
+        return "ready: " + myViews.size() + "/" + myTargetSize + ", hits: " + myHits + ", misses: " + myMisses
+                + ", created: " + myCreated + ", trimmed: " + myTrimmed;
+    }
+}
@@ -22,6 +22,7 @@ var firstCollapsedHeading;
         "#6778d0", "#ac9c3d", "#b94a73", "#56ae6c", "#9750a1", "#ba543d"
     ];
     const HEADERS = "H1 H2 H3 H4 H5 H6".split(" ");
+    const MARKDOWN_CONTAINERS = ".markdown-body, .wiki-body, .markdown-format";
     const COLLAPSED = "ghcm-collapsed";
     const HIDDEN = "ghcm-hidden";
     const ARROW_COLORS = document.createElement("style");
@@ -29,6 +30,11 @@ var firstCollapsedHeading;
     let headingIndex = 0;
     let usedHeadings = [];      // track which heading ids are still in use
 
+    // header index: level, parent header and nested id signature of every header, built on first
+    // use after load and again only after headers are added, removed or change id
+    let headers = null;
+    let headersObserver = null;
+
     // our stored state information
     let headingsMap = {};      // hash map of heading id to index
     let collapsedHeadings = {};
@@ -68,7 +74,7 @@ var firstCollapsedHeading;
         return headingIndex;
     }
 
-    function saveCollapsedState() {
+    function pruneHeadingsMap() {
         // clean out unused headings
         let newMap = {};
         for (let id in headingsMap) {
@@ -82,14 +88,124 @@ var firstCollapsedHeading;
         }
         headingsMap = newMap;
         adjustHeadingIndex();
+    }
 
+    function saveCollapsedState() {
+        // headings map is pruned when the header index is built, serialized when the deferred state is flushed
         // state name must be same as the global variable, this is where it will be set on load
         let state = {
             "headingsMap": headingsMap,
             "collapsedHeadings": collapsedHeadings,
         };
-        let str = JSON.stringify(state, null, 2);
-        markdownNavigator.setState(COLLAPSED_STATE, state)
+        markdownNavigator.setStateDeferred(COLLAPSED_STATE, state)
+    }
+
+    function headerLevel(el) {
+        return HEADERS.indexOf(el.nodeName || "") + 1;
+    }
+
+    function buildHeaderIndex() {
+        const index = {
+            entries: [],            // headers in markdown containers, in document order
+            byElement: new Map(),   // all headers
+            byName: {},             // headers in markdown containers by node name
+            containerCounts: new Map(),
+        };
+
+        for (const name of HEADERS) {
+            index.byName[name] = [];
+        }
+
+        // a header's parent is the closest preceding header of lower level among its own and its ancestors'
+        // preceding siblings, headers nested in preceding siblings are not visible, chain is copied for each level
+        function walk(parent, chain, container) {
+            chain = chain.slice();
+            for (let el = parent.firstElementChild; el; el = el.nextElementSibling) {
+                const level = headerLevel(el);
+                if (level) {
+                    while (chain.length && chain[chain.length - 1].level >= level) {
+                        chain.pop();
+                    }
+
+                    const entry = {
+                        el: el,
+                        level: level,
+                        parent: chain.length ? chain[chain.length - 1] : null,
+                        container: container,
+                        ids: null,
+                    };
+
+                    chain.push(entry);
+                    index.byElement.set(el, entry);
+
+                    if (container) {
+                        index.entries.push(entry);
+                        index.byName[el.nodeName].push(entry);
+                        index.containerCounts.set(container, (index.containerCounts.get(container) || 0) + 1);
+                    }
+                } else if (el.firstElementChild) {
+                    walk(el, chain, container || (el.matches(MARKDOWN_CONTAINERS) ? el : null));
+                }
+            }
+        }
+
+        walk(document.body, [], null);
+
+        // signatures in document order so new heading ids get indices in the same order as before
+        for (const entry of index.entries) {
+            entry.ids = headerIds(entry);
+        }
+
+        pruneHeadingsMap();
+        return index;
+    }
+
+    function getHeaders() {
+        if (headers && headersObserver) {
+            // changes made by a script in the same task have not been delivered to the observer yet
+            checkHeaderMutations(headersObserver.takeRecords());
+        }
+        if (!headers) {
+            headers = buildHeaderIndex();
+        }
+        return headers;
+    }
+
+    function containsHeader(node) {
+        return node.nodeType === Node.ELEMENT_NODE && (headerLevel(node) || node.querySelector(HEADERS.join(",")));
+    }
+
+    function checkHeaderMutations(mutations) {
+        if (!headers) return;
+
+        for (const mutation of mutations) {
+            if (mutation.type === "attributes") {
+                if (headerLevel(mutation.target)) {
+                    headers = null;
+                    return;
+                }
+            } else {
+                for (const node of mutation.addedNodes) {
+                    if (containsHeader(node)) {
+                        headers = null;
+                        return;
+                    }
+                }
+                for (const node of mutation.removedNodes) {
+                    if (containsHeader(node)) {
+                        headers = null;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    function observeHeaders() {
+        if (!window.MutationObserver) return;
+
+        headersObserver = new MutationObserver(checkHeaderMutations);
+        headersObserver.observe(document.body, { childList: true, subtree: true, attributes: true, attributeFilter: ["id"] });
     }
 
     function loadCollapsedState() {
@@ -115,81 +231,55 @@ var firstCollapsedHeading;
     }
 
     function toggleHeader(el, shifted) {
-        if (el) {
+        const entry = el && getHeaders().byElement.get(el);
+        if (entry) {
             el.classList.toggle(COLLAPSED);
-            let els;
-            const name = el.nodeName || "",
-                level = parseInt(name.replace(/[^\d]/, ""), 10),
-                isCollapsed = el.classList.contains(COLLAPSED);
+            const isCollapsed = el.classList.contains(COLLAPSED);
 
             if (shifted) {
                 // collapse all same level anchors
-                els = $$(`.markdown-body ${name}, .wiki-body ${name}, .markdown-format ${name}`);
-                for (el of els) {
-                    nextHeader(el, level, isCollapsed);
+                for (const sameLevel of getHeaders().byName[el.nodeName]) {
+                    nextHeader(sameLevel, isCollapsed);
                 }
             } else {
-                nextHeader(el, level, isCollapsed);
+                nextHeader(entry, isCollapsed);
             }
             removeSelection();
         }
     }
 
-    function headerIds(el) {
-        const level = parseInt((el.nodeName || "").replace(/[^\d]/, ""), 10);
-        let selector = HEADERS.slice(0, level).join(",");
-
-        const headers = [];
-        const orig = el;
-        while (el && el.nodeName !== "BODY") {
-            try {
-                if (el && el.nodeName !== "#comment" && el.nodeName !== "#text" && el.matches(selector)) {
-                    if (el.id) {
-                        headers.push(el.nodeName + "-" + getHeaderIndex(el.id));
-                    } else {
-                        headers.push(el.nodeName + "-" + "undef");
-                    }
-
-                    const level = parseInt((el.nodeName || "").replace(/[^\d]/, ""), 10);
-                    if (level === 1) {
-                        break;
-                    }
-                    selector = HEADERS.slice(0, level - 1).join(",");
-                }
-            }
-            catch (e) {
-                console.error("headerIds exception: " + e);
-            }
-
-            let previous = el.previousSibling;
-            if (previous) {
-                el = previous;
-            } else {
-                el = el.parentNode
-            }
+    function headerIds(entry) {
+        // nested header id signature, own index first, then parents' like the original backward scan did
+        const ids = [];
+        for (let header = entry; header; header = header.parent) {
+            const el = header.el;
+            ids.push(el.nodeName + "-" + (el.id ? getHeaderIndex(el.id) : "undef"));
         }
-
-        // get the nested header id signature
-        return headers.reverse().join("-");
+        return ids.reverse().join("-");
     }
 
-    function nextHeader(el, level, isCollapsed) {
+    function nextHeader(entry, isCollapsed) {
+        let el = entry.el;
         el.classList[isCollapsed ? "add" : "remove"](COLLAPSED);
 
-        let ids = headerIds(el);
-        collapsedHeadings[ids] = isCollapsed;
+        if (entry.ids === null) {
+            entry.ids = headerIds(entry);
+        }
+        collapsedHeadings[entry.ids] = isCollapsed;
 
-        const selector = HEADERS.slice(0, level).join(","),
-            name = [COLLAPSED, HIDDEN],
+        // section is the following siblings up to a header of the same or higher level
+        const byElement = getHeaders().byElement,
             els = [];
         el = el.nextElementSibling;
 
-        while (el && !el.matches(selector)) {
+        while (el) {
+            const header = byElement.get(el);
+            if (header && header.level <= entry.level) break;
             els[els.length] = el;
             el = el.nextElementSibling;
         }
+
         if (els.length) {
-            const headers = HEADERS.join(",");
             let currentCollapsed = isCollapsed;
 
             if (isCollapsed) {
@@ -198,7 +288,7 @@ var firstCollapsedHeading;
                 })
             } else {
                 els.forEach(el => {
-                    if (el.matches(headers)) {
+                    if (byElement.has(el)) {
                         currentCollapsed = el.classList.contains(COLLAPSED);
                         el.classList.remove(HIDDEN);
                     } else {
@@ -242,26 +332,26 @@ var firstCollapsedHeading;
 
     // show siblings of hash target
     function siblings(target) {
+        const entry = getHeaders().byElement.get(target);
+        if (!entry) return;
+
+        const byElement = getHeaders().byElement;
         let el = target.nextElementSibling,
             els = [target];
-        const level = parseInt((target.nodeName || "").replace(/[^\d]/, ""), 10),
-            selector = HEADERS.slice(0, level - 1).join(",");
-        while (el && !el.matches(selector)) {
+
+        while (el && !((byElement.get(el) || entry).level < entry.level)) {
             els[els.length] = el;
             el = el.nextElementSibling;
         }
         el = target.previousElementSibling;
-        while (el && !el.matches(selector)) {
+        while (el && !((byElement.get(el) || entry).level < entry.level)) {
             els[els.length] = el;
             el = el.previousElementSibling;
         }
-        if (els.length) {
-            els = els.filter(el => {
-                return el.nodeName === target.nodeName;
-            });
-            els.classList.remove(HIDDEN);
-        }
-        nextHeader(target, level, false);
+        els.filter(el => el.nodeName === target.nodeName).forEach(el => {
+            el.classList.remove(HIDDEN);
+        });
+        nextHeader(entry, false);
     }
 
     function removeSelection() {
@@ -316,19 +406,16 @@ var firstCollapsedHeading;
     }
 
     function checkHash() {
-        let el, els, md;
-        const mds = $$(".markdown-body, .wiki-body, .markdown-format "),
+        let el, els;
+        const index = getHeaders(),
             tmp = (window.location.hash || "").replace(/#/, "");
 
-        for (md of mds) {
-            els = $$(HEADERS.join(","), md);
-            if (els.length > 1) {
-                for (el of els) {
-                    let ids = headerIds(el);
-                    let isCollapsed = collapsedHeadings.hasOwnProperty(ids) ? collapsedHeadings[ids] : false;
-                    if (el && isCollapsed && !el.classList.contains(COLLAPSED)) {
-                        toggleHeader(el, false);
-                    }
+        for (const entry of index.entries) {
+            if (index.containerCounts.get(entry.container) > 1) {
+                el = entry.el;
+                let isCollapsed = collapsedHeadings.hasOwnProperty(entry.ids) ? collapsedHeadings[entry.ids] : false;
+                if (isCollapsed && !el.classList.contains(COLLAPSED)) {
+                    toggleHeader(el, false);
                 }
             }
         }
@@ -374,5 +461,6 @@ var firstCollapsedHeading;
     addColors();
     addBinding();
     checkHash();
+    observeHeaders();
 })();
 
@@ -49,35 +49,110 @@ var console = (() => {
         print: text => markdownNavigator.print(text),
     };
 
+    // when not debugging, entries are serialized and sent to the Java sink in batches, once per
+    // animation frame or when the batch is full, the debugger needs live arguments so it gets direct calls
+    let __batch = {
+        sink: null,
+        direct: true,
+        entries: [],
+        size: 0,
+        scheduled: false,
+        maxEntries: 100,
+        maxSize: 32768,
+    };
+
+    function argText(arg) {
+        if (typeof arg === "string") return arg;
+        if (arg === null || typeof arg !== "object") return String(arg);
+        if (arg instanceof Error) return arg.stack || String(arg);
+        if (arg instanceof Node) return "<" + arg.nodeName.toLowerCase() + (arg.id ? "#" + arg.id : "") + ">";
+        try {
+            return JSON.stringify(arg);
+        } catch (e) {
+            return String(arg);
+        }
+    }
+
+    function flush() {
+        if (__batch.entries.length) {
+            let entries = __batch.entries;
+            __batch.entries = [];
+            __batch.size = 0;
+            __batch.sink.log(JSON.stringify(entries));
+        }
+    }
+
+    function onFrame() {
+        __batch.scheduled = false;
+        flush();
+    }
+
+    function consoleLog(type, args) {
+        if (__batch.direct) {
+            return __tmp.consoleLog(type, args);
+        }
+
+        let text = "";
+        for (let i = 0; i < args.length; i++) {
+            text += (i ? " " : "") + argText(args[i]);
+        }
+
+        __batch.entries.push([type, Date.now(), text]);
+        __batch.size += text.length;
+
+        if (__batch.entries.length >= __batch.maxEntries || __batch.size >= __batch.maxSize) {
+            flush();
+        } else if (!__batch.scheduled) {
+            __batch.scheduled = true;
+            if (window.requestAnimationFrame) {
+                window.requestAnimationFrame(onFrame);
+            } else {
+                setTimeout(onFrame, 16);
+            }
+        }
+    }
+
+    window.addEventListener("pagehide", () => {
+        if (__batch.sink) flush();
+    });
+
     return {
-        assert: function () { return __tmp.consoleLog("assert", arguments); },
-        clear: function () { return __tmp.consoleLog("clear", arguments); },
-        count: function () { return __tmp.consoleLog("count", arguments); },
-        debug: function () { return __tmp.consoleLog("debug", arguments); },
-        dir: function () { return __tmp.consoleLog("dir", arguments); },
-        dirxml: function () { return __tmp.consoleLog("dirxml", arguments); },
-        error: function () { return __tmp.consoleLog("error", arguments); },
-        exception: function () { return __tmp.consoleLog("exception", arguments); },
-        group: function () { return __tmp.consoleLog("startGroup", arguments); },
-        groupCollapsed: function () { return __tmp.consoleLog("startGroupCollapsed", arguments); },
-        groupEnd: function () { return __tmp.consoleLog("endGroup", arguments); },
-        info: function () { return __tmp.consoleLog("info", arguments); },
-        log: function () { return __tmp.consoleLog("log", arguments); },
-        profile: function () { return __tmp.consoleLog("profile", arguments); },
-        profileEnd: function () { return __tmp.consoleLog("profileEnd", arguments); },
-        select: function () { return __tmp.consoleLog("select", arguments); },
-        table: function () { return __tmp.consoleLog("table", arguments); },
-        time: function () { return __tmp.consoleLog("time", arguments); },
-        timeEnd: function () { return __tmp.consoleLog("timeEnd", arguments); },
-        trace: function () { return __tmp.consoleLog("trace", arguments); },
-        warn: function () { return __tmp.consoleLog("warning", arguments); },
+        assert: function () { return consoleLog("assert", arguments); },
+        clear: function () { return consoleLog("clear", arguments); },
+        count: function () { return consoleLog("count", arguments); },
+        debug: function () { return consoleLog("debug", arguments); },
+        dir: function () { return consoleLog("dir", arguments); },
+        dirxml: function () { return consoleLog("dirxml", arguments); },
+        error: function () { return consoleLog("error", arguments); },
+        exception: function () { return consoleLog("exception", arguments); },
+        group: function () { return consoleLog("startGroup", arguments); },
+        groupCollapsed: function () { return consoleLog("startGroupCollapsed", arguments); },
+        groupEnd: function () { return consoleLog("endGroup", arguments); },
+        info: function () { return consoleLog("info", arguments); },
+        log: function () { return consoleLog("log", arguments); },
+        profile: function () { return consoleLog("profile", arguments); },
+        profileEnd: function () { return consoleLog("profileEnd", arguments); },
+        select: function () { return consoleLog("select", arguments); },
+        table: function () { return consoleLog("table", arguments); },
+        time: function () { return consoleLog("time", arguments); },
+        timeEnd: function () { return consoleLog("timeEnd", arguments); },
+        trace: function () { return consoleLog("trace", arguments); },
+        warn: function () { return consoleLog("warning", arguments); },
         print: text => __tmp.print(text),
         println: text => __tmp.println(text),
+        setDirect: direct => {
+            if (__batch.sink) {
+                flush();
+                __batch.direct = direct;
+            }
+        },
         setJsBridge: (jsBridge) => {
             __tmp = jsBridge;
+            __batch.sink = window.markdownNavigatorConsole || null;
+            __batch.direct = !__batch.sink || __batch.sink.isDirect();
             // function for cached logs
             return ((type, args) => {
-                __tmp.consoleLog(type, args);
+                consoleLog(type, args);
             });
         },
     };
@@ -89,13 +164,16 @@ window.console = console;
 markdownNavigator = (function () {
     "use strict";
 
-    // FIX: change this for real implementation using computed CSS properties of element
-    // and an overlay element
+    // highlight is a single overlay element positioned over the node's bounds, the node itself is not modified
     const HIGHLIGHT = "markdown-navigator-highlight";
     const HIGHLIGHT_STYLE = document.createElement("style");
 
     // just so we get a color chooser in IDEA, uncomment
     HIGHLIGHT_STYLE.textContent = `.${HIGHLIGHT} {
+    position: absolute;
+    pointer-events: none;
+    z-index: 2147483647;
+    box-sizing: border-box;
     background-color: rgba(255, 0, 255, 0.07) !important;
 }`;
 
@@ -104,6 +182,8 @@ markdownNavigator = (function () {
             __state: {},
             __onJsBridge: [],
             __onJsConsole: [],
+            __maxJsConsole: 1000, // console entries kept until JSBridge connects
+            __droppedJsConsole: 0,
             __consoleSetJsBridge: console.setJsBridge, // functions to use before JSBridge is established
             onJsBridge: () => {
             },
@@ -112,7 +192,81 @@ markdownNavigator = (function () {
         },
         __consoleLog = (type, args) => {
         },
-        __lastHighlight = null;
+        __stateCache = {}, // injected or set state values, getState only goes to the bridge for keys not in here
+        __pendingState = {
+            values: {}, // last deferred value of each key
+            writes: 0, // deferred writes since last flush
+            interval: 100, // ms between flushes
+            scheduled: false,
+        },
+        __lastHighlight = null,
+        __highlightOverlay = null,
+        __nodePaths = new Map(), // node ordinal path to node
+        __nodeChildren = new WeakMap(), // node to its children counted by ordinals
+        __nodeObserver = null,
+        __events = {
+            routes: {}, // event type to routes registered by Java
+            listening: {}, // event types with a window listener
+            pending: new Map(), // coalesced route id to last [id, fields, count]
+            scheduled: false,
+            handledBy: null, // page script that handled the current event
+        };
+
+    // children counted by node ordinals: elements and non-blank text
+    function ordinalChildren(node) {
+        let children = __nodeChildren.get(node);
+        if (!children) {
+            children = [];
+            let iMax = node.childNodes.length;
+            for (let i = 0; i < iMax; i++) {
+                let child = node.childNodes.item(i);
+                if (child.nodeName.startsWith("#") && (child.nodeName !== "#text" || child.textContent.trim() === "")) {
+                    // skip non-element nodes or empty text
+                    continue;
+                }
+                children.push(child);
+            }
+            __nodeChildren.set(node, children);
+
+            if (!__nodeObserver && window.MutationObserver) {
+                // any change to the tree may change paths, children lists are dropped only for changed nodes
+                __nodeObserver = new MutationObserver(mutations => {
+                    __nodePaths.clear();
+                    for (const mutation of mutations) {
+                        let target = mutation.type === "characterData" ? mutation.target.parentNode : mutation.target;
+                        if (target) __nodeChildren.delete(target);
+                    }
+                });
+                __nodeObserver.observe(document, { childList: true, subtree: true, characterData: true });
+            }
+        }
+        return children;
+    }
+
+    function showHighlight(node) {
+        let rect;
+        if (node.nodeType === Node.ELEMENT_NODE) {
+            rect = node.getBoundingClientRect();
+        } else {
+            let range = document.createRange();
+            range.selectNode(node);
+            rect = range.getBoundingClientRect();
+        }
+
+        if (!__highlightOverlay) {
+            __highlightOverlay = document.createElement("div");
+            __highlightOverlay.className = HIGHLIGHT;
+            // after body so body children ordinals are not affected
+            document.documentElement.appendChild(__highlightOverlay);
+        }
+
+        let style = __highlightOverlay.style;
+        style.left = (rect.left + window.pageXOffset) + "px";
+        style.top = (rect.top + window.pageYOffset) + "px";
+        style.width = rect.width + "px";
+        style.height = rect.height + "px";
+        style.display = "block";
+    }
 
     delete console["setJsBridge"];
 
@@ -121,20 +275,193 @@ markdownNavigator = (function () {
     };
 
     __tmp.onJsConsole = op => {
-        __tmp.__onJsConsole[__tmp.__onJsConsole.length] = op;
+        if (__tmp.__onJsConsole.length < __tmp.__maxJsConsole) {
+            __tmp.__onJsConsole[__tmp.__onJsConsole.length] = op;
+        } else {
+            __tmp.__droppedJsConsole++;
+        }
     };
 
+    function flushState() {
+        __pendingState.scheduled = false;
+        if (!__pendingState.writes) return;
+
+        let values = __pendingState.values;
+        let writes = __pendingState.writes;
+        __pendingState.values = {};
+        __pendingState.writes = 0;
+
+        if (__tmp === null && window.markdownNavigatorState) {
+            // all keys in one upcall, JSON.stringify() drops undefined values so removals are sent by name
+            let changed = {};
+            let removed = [];
+            for (let name in values) {
+                if (values.hasOwnProperty(name)) {
+                    if (values[name] === undefined || values[name] === null) {
+                        removed.push(name);
+                    } else {
+                        changed[name] = values[name];
+                    }
+                }
+            }
+            window.markdownNavigatorState.setStates(JSON.stringify(changed), JSON.stringify(removed), writes);
+        } else {
+            for (let name in values) {
+                if (values.hasOwnProperty(name)) {
+                    __unbridged.setState(name, values[name]);
+                }
+            }
+        }
+    }
+
+    window.addEventListener("pagehide", flushState);
+    window.addEventListener("beforeunload", flushState);
+
+    function closestMatch(node, selector) {
+        let el = node && node.nodeType !== Node.ELEMENT_NODE ? node.parentElement : node;
+        while (el && el.nodeType === Node.ELEMENT_NODE) {
+            if (el.matches(selector)) return el;
+            el = el.parentElement;
+        }
+        return null;
+    }
+
+    function eventFields(route, event, el) {
+        let fields = {};
+        for (const field of route.fields) {
+            switch (field) {
+                case "nodeName":
+                    fields.nodeName = el ? el.nodeName : "";
+                    break;
+                case "id":
+                    fields.id = el && el.id || "";
+                    break;
+                case "className":
+                    fields.className = el && typeof el.className === "string" ? el.className : "";
+                    break;
+                case "text":
+                    fields.text = el ? (el.textContent || "").substring(0, 256) : "";
+                    break;
+                case "scrollX":
+                    fields.scrollX = window.pageXOffset;
+                    break;
+                case "scrollY":
+                    fields.scrollY = window.pageYOffset;
+                    break;
+                case "handledBy":
+                    fields.handledBy = __events.handledBy || "";
+                    break;
+                default:
+                    // clientX, clientY, pageX, pageY, key, button, shiftKey, altKey, ctrlKey, metaKey, defaultPrevented
+                    if (event[field] !== undefined) fields[field] = event[field];
+                    break;
+            }
+        }
+        return fields;
+    }
+
+    function sendEvents(entries) {
+        if (__events.pending.size) {
+            entries = Array.from(__events.pending.values()).concat(entries);
+            __events.pending.clear();
+        }
+        if (entries.length && window.markdownNavigatorEvents) {
+            window.markdownNavigatorEvents.dispatch(JSON.stringify(entries));
+        }
+    }
+
+    function onEventsFrame() {
+        __events.scheduled = false;
+        sendEvents([]);
+    }
+
+    // one listener per event type, on window so it runs after the page's own document listeners
+    function onEvent(event) {
+        const routes = __events.routes[event.type];
+        let entries = [];
+
+        if (routes) {
+            for (const route of routes) {
+                let el = null;
+                if (route.selector) {
+                    el = closestMatch(event.target, route.selector);
+                    if (!el) continue;
+                }
+
+                const fields = eventFields(route, event, el);
+                if (route.coalesce) {
+                    const entry = __events.pending.get(route.id);
+                    if (entry) {
+                        entry[1] = fields;
+                        entry[2]++;
+                    } else {
+                        __events.pending.set(route.id, [route.id, fields, 1]);
+                    }
+
+                    if (!__events.scheduled) {
+                        __events.scheduled = true;
+                        if (window.requestAnimationFrame) {
+                            window.requestAnimationFrame(onEventsFrame);
+                        } else {
+                            setTimeout(onEventsFrame, 16);
+                        }
+                    }
+                } else {
+                    entries.push([route.id, fields, 1]);
+                }
+            }
+        }
+
+        // pending coalesced events go along to keep order
+        if (entries.length) sendEvents(entries);
+        __events.handledBy = null;
+    }
+
     let __unbridged = {
         // functions to be replaced with real ones when JsBridge is established
         setEventHandledBy: handledBy => {
+            __events.handledBy = handledBy;
+        },
+
+        // routes from Java DomEventDispatcher, replace any previous routes
+        setEventRoutes: routes => {
+            __events.routes = {};
+            for (const route of routes) {
+                (__events.routes[route.type] = __events.routes[route.type] || []).push(route);
+                if (!__events.listening[route.type]) {
+                    __events.listening[route.type] = true;
+                    window.addEventListener(route.type, onEvent, false);
+                }
+            }
         },
 
         getState: name => {
-            return __tmp.__state[name] || null;
+            return __stateCache[name] || null;
         },
 
         setState: (name, state) => {
             __tmp.__state[name] = state;
+            __stateCache[name] = state;
+        },
+
+        // for frequent writes: only the last value of a key is saved, at most once per flush interval and on unload
+        setStateDeferred: (name, state) => {
+            __stateCache[name] = state;
+            __pendingState.values[name] = state;
+            __pendingState.writes++;
+            if (!__pendingState.scheduled) {
+                __pendingState.scheduled = true;
+                setTimeout(flushState, __pendingState.interval);
+            }
+        },
+
+        flushState: () => {
+            flushState();
+        },
+
+        // state injected into the page by Java, already saved so not sent back on connection
+        injectState: (name, state) => {
+            __stateCache[name] = state;
         },
 
         toggleTask: function (pos) {
@@ -167,54 +494,39 @@ markdownNavigator = (function () {
         },
 
         highlightNode: (nodeOrdinals) => {
-            function getChildNode(node, nodeOrdinal) {
-                let iMax = node.childNodes.length;
-                let index = 0;
-                for (let i = 0; i < iMax; i++) {
-                    let child = node.childNodes.item(i);
-                    if (child.nodeName.startsWith("#") && (child.nodeName !== "#text" || child.textContent.trim() === "")) {
-                        // skip non-element nodes or empty text
-                        continue;
-                    }
-
-                    if (index === nodeOrdinal) {
-                        return child;
-                    }
-                    index++;
-                }
-                return null;
-            }
-
             // need to find the node, path is ordinal in parent, in reverse order, all the way to document, first index to be ignored
             let iMax = nodeOrdinals.length;
-            let node = document;
-            try {
-                for (let i = iMax; i-- > 1;) {
-                    let nodeOrdinal = nodeOrdinals[i];
-                    let child = getChildNode(node, nodeOrdinal);
+            let key = Array.prototype.join.call(nodeOrdinals, ",");
+            let node = __nodePaths.get(key);
 
-                    if (child === null) {
-                        if (i === 1) {
-                            // if last one take the parent
+            try {
+                if (node === undefined) {
+                    node = document;
+                    for (let i = iMax; i-- > 1;) {
+                        let nodeOrdinal = nodeOrdinals[i];
+                        let child = ordinalChildren(node)[nodeOrdinal] || null;
+
+                        if (child === null) {
+                            if (i === 1) {
+                                // if last one take the parent
+                                break;
+                            }
+
+                            console.error("Node ordinal not in children", nodeOrdinal, node, nodeOrdinals);
+                            node = null;
                             break;
                         }
 
-                        console.error("Node ordinal not in children", nodeOrdinal, node, nodeOrdinals);
-                        node = null;
-                        break;
-                    }
-
-                    if (child.nodeName.startsWith("#")) {
-                        // FIX: when overlays are implemented to handle non-element nodes, highlight the child
-                        break;
+                        node = child;
                     }
 
-                    node = child;
+                    if (node === document) node = null;
+                    __nodePaths.set(key, node);
                 }
+
                 // console.debug("Final node", node);
                 if (node !== null && node !== __lastHighlight) {
-                    __unbridged.hideHighlight();
-                    node.classList.add(HIGHLIGHT);
+                    showHighlight(node);
                     __lastHighlight = node;
                 }
             } catch (e) {
@@ -224,9 +536,8 @@ markdownNavigator = (function () {
 
         hideHighlight: () => {
             if (__lastHighlight) {
-                __lastHighlight.classList.remove(HIGHLIGHT);
-                if (__lastHighlight.classList.length === 0) {
-                    __lastHighlight.removeAttribute("class");
+                if (__highlightOverlay) {
+                    __highlightOverlay.style.display = "none";
                 }
                 __lastHighlight = null;
             }
@@ -245,9 +556,26 @@ markdownNavigator = (function () {
             delete __unbridged["print"];
 
             // these now point directly to the jsBridge implementations or invocations
-            __unbridged.setEventHandledBy = (name) => jsBridge.setEventHandledBy(name);
-            __unbridged.getState = (name) => jsBridge.getState(name);
-            __unbridged.setState = (name, state) => jsBridge.setState(name, state);
+            __unbridged.setEventHandledBy = (name) => {
+                // routed events carry it along, otherwise Java asks the bridge
+                __events.handledBy = name;
+                if (!window.markdownNavigatorEvents) jsBridge.setEventHandledBy(name);
+            };
+            __unbridged.getState = (name) => {
+                // keys not injected into the page are fetched once
+                if (!__stateCache.hasOwnProperty(name)) {
+                    __stateCache[name] = jsBridge.getState(name);
+                }
+                return __stateCache[name];
+            };
+            __unbridged.setState = (name, state) => {
+                __stateCache[name] = state;
+                if (window.markdownNavigatorState) {
+                    window.markdownNavigatorState.setState(name, JSON.stringify(state));
+                } else {
+                    jsBridge.setState(name, state);
+                }
+            };
             __unbridged.toggleTask = position => jsBridge.toggleTask(position);
             __unbridged.onJsBridge = op => op();
 
@@ -264,13 +592,20 @@ markdownNavigator = (function () {
                 }
             }
 
+            if (__tmp.__droppedJsConsole) {
+                console.warn(`${__tmp.__droppedJsConsole} console entries dropped before JSBridge connected`);
+                if (window.markdownNavigatorConsole) {
+                    window.markdownNavigatorConsole.dropped(__tmp.__droppedJsConsole);
+                }
+            }
+
             // save any state changes requested before jsBridge was setup
             console.groupCollapsed("cachedState");
             for (let f in __tmp.__state) {
                 if (__tmp.__state.hasOwnProperty(f)) {
                     console.log(f, __tmp.__state[f]);
                     // console.println(name + " = " + JSON.stringify( __state[name],null,2));
-                    __markdownNavigator.setState(f, __tmp.__state[f]);
+                    __unbridged.setState(f, __tmp.__state[f]);
                 }
             }
             console.groupEnd();
@@ -33,8 +33,7 @@ var markdownNavigator;
     markdownNavigator.onJsBridge(() => {
         window.addEventListener('scroll', function () {
             let onLoadScroll = {x: window.pageXOffset, y: window.pageYOffset};
-            console.debug("onLoadScroll", onLoadScroll);
-            markdownNavigator.setState("onLoadScroll", onLoadScroll);
+            markdownNavigator.setStateDeferred("onLoadScroll", onLoadScroll);
         });
     });
 
@@ -0,0 +1,65 @@
+/*
+ *   The MIT License (MIT)
+ *   <p>
+ *   Copyright (c) 2018-2020 Vladimir Schneider (https://github.com/vsch)
+ *   <p>
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy
+ *   of this software and associated documentation files (the "Software"), to deal
+ *   in the Software without restriction, including without limitation the rights
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the Software is
+ *   furnished to do so, subject to the following conditions:
+ *   <p>
+ *   The above copyright notice and this permission notice shall be included in all
+ *   copies or substantial portions of the Software.
+ *   <p>
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE
+ *
+ */
+
+package com.vladsch.javafx.webview.debugger;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DevToolsProtocolStatsTest {
+    static final String REQUEST_1 = "{\"id\":1,\"method\":\"Runtime.enable\"}";
+    static final String REQUEST_7 = "{\"id\":7,\"method\":\"Runtime.callFunctionOn\",\"params\":{\"objectId\":\"{\\\"injectedScriptId\\\":1,\\\"id\\\":3}\",\"returnByValue\":true}}";
+    static final String BY_VALUE_RESPONSE_7 = "{\"result\":{\"result\":{\"type\":\"object\",\"value\":{\"id\":1,\"name\":\"item\"}},\"wasThrown\":false},\"id\":7}";
+
+    @Test
+    public void test_responseIdIsTopLevelTrailingId() {
+        assertEquals(7, DevToolsProtocolStats.scanResponseId(BY_VALUE_RESPONSE_7));
+        assertEquals(7, DevToolsProtocolStats.scanResponseId("{\"result\":{},\"id\":7}"));
+        assertEquals(7, DevToolsProtocolStats.scanResponseId("{\"id\":7,\"result\":{\"value\":{\"id\":1}}}"));
+        assertEquals(-1, DevToolsProtocolStats.scanResponseId("{\"result\":{\"value\":{\"name\":\"a\",\"id\":1}}}"));
+    }
+
+    @Test
+    public void test_byValueResultWithIdMatchesItsRequest() {
+        DevToolsProtocolStats stats = new DevToolsProtocolStats();
+        HashMap<Long, DevToolsProtocolStats.Pending> pending = new HashMap<>();
+
+        stats.fromDevTools(REQUEST_1, pending);
+        stats.fromDevTools(REQUEST_7, pending);
+        stats.fromBrowser(BY_VALUE_RESPONSE_7, pending);
+
+        assertTrue(pending.containsKey(1L));
+        assertFalse(pending.containsKey(7L));
+        for (String line : stats.getMethodLines(10)) {
+            // only the answered request has latency
+            assertEquals(line, line.startsWith("Runtime.callFunctionOn"), line.contains(" p50 "));
+        }
+    }
+}